@@ -0,0 +1,167 @@
+package com.moex;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.NavigableMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки фаз дискретного аукциона: разбор строк, чтение, очистка, трансформация
+ * и определение оптимальной цены.
+ *
+ * Данные генерируются детерминированно ({@link OrderFlowGenerator}) и параметризуются объемом,
+ * количеством ценовых уровней вокруг цены 50.50 и долей заявок на покупку. Сборка и запуск с профилировщиком
+ * аллокаций:
+ *
+ * <pre>
+ * mvn -Pjmh package
+ * java -jar target/benchmarks.jar -prof gc
+ * </pre>
+ *
+ * @author Alexey Prudnikov
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class AuctionBenchmark {
+
+    private static final long SEED = 20171212L;
+    private static final long CENTER_PRICE = 5_050;
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    @Param({"100", "1000", "9901"})
+    private int priceLevels;
+
+    @Param({"0.2", "0.5", "0.8"})
+    private double buyShare;
+
+    private byte[] data;
+    private String[] lines;
+
+    private DiscreteAuction auction;
+    private BidColumns bids;
+    private long minSellPrice;
+    private long maxBuyPrice;
+    private PriceVolumes cleanSellBids;
+    private PriceVolumes cleanBuyBids;
+    private PriceVolumes cumulativeSellBids;
+    private PriceVolumes cumulativeBuyBids;
+    private NavigableMap<Long, Long> buyBidsTree;
+    private PriceLevelBook priceLevelBook;
+
+    /**
+     * Способ определения оптимальной цены для бенчмарков полного чтения данных
+     */
+    @State(Scope.Benchmark)
+    public static class EngineState {
+
+        @Param({"TREE", "SWEEP", "HISTOGRAM", "AUTO"})
+        private DiscreteAuction.Engine engine;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size * 14);
+        new OrderFlowGenerator(SEED)
+            .withPriceDistribution(OrderFlowGenerator.PriceDistribution.UNIFORM)
+            .withPrices(CENTER_PRICE, priceLevels / 2)
+            .withBuyShare(buyShare)
+            .generate(out, size);
+        data = out.toByteArray();
+        lines = new String(data, StandardCharsets.US_ASCII).split("\n");
+
+        auction = new DiscreteAuction();
+        bids = auction.read(new ByteArrayInputStream(data));
+        minSellPrice = Long.MAX_VALUE;
+        maxBuyPrice = Long.MIN_VALUE;
+        for (int i = 0; i < bids.size(); i++) {
+            if (bids.getType(i) == Bid.BidType.S) {
+                minSellPrice = Math.min(minSellPrice, bids.getPrice(i));
+            }
+            else {
+                maxBuyPrice = Math.max(maxBuyPrice, bids.getPrice(i));
+            }
+        }
+        cleanSellBids = auction.cleanSellBids(bids, maxBuyPrice);
+        cleanBuyBids = auction.cleanBuyBids(bids, minSellPrice);
+        cumulativeSellBids = auction.transformSellBids(cleanSellBids);
+        cumulativeBuyBids = auction.transformBuyBids(cleanBuyBids);
+        buyBidsTree = DiscreteAuction.searchTree(cumulativeBuyBids);
+
+        priceLevelBook = new PriceLevelBook();
+        new BidParser().parse(new ByteArrayInputStream(data), priceLevelBook);
+    }
+
+    @Benchmark
+    public void parseBidFunction(Blackhole blackhole) {
+        ParseBidFunction function = new ParseBidFunction();
+        for (String line : lines) {
+            blackhole.consume(function.apply(line));
+        }
+    }
+
+    @Benchmark
+    public long bidParser() throws IOException {
+        long[] checksum = new long[1];
+        new BidParser().parse(new ByteArrayInputStream(data), (type, amount, price) -> checksum[0] += amount + price);
+        return checksum[0];
+    }
+
+    @Benchmark
+    public DealResult readData(EngineState state) {
+        DiscreteAuction engineAuction = new DiscreteAuction(state.engine);
+        engineAuction.readData(new ByteArrayInputStream(data));
+        return engineAuction.makeDeal();
+    }
+
+    @Benchmark
+    public int[] priorityOrder() {
+        return auction.priorityOrder(bids, Bid.BidType.S, maxBuyPrice);
+    }
+
+    @Benchmark
+    public void cleanBids(Blackhole blackhole) {
+        blackhole.consume(auction.cleanSellBids(bids, maxBuyPrice));
+        blackhole.consume(auction.cleanBuyBids(bids, minSellPrice));
+    }
+
+    @Benchmark
+    public PriceVolumes transformSellBids() {
+        return auction.transformSellBids(cleanSellBids);
+    }
+
+    @Benchmark
+    public PriceVolumes transformBuyBids() {
+        return auction.transformBuyBids(cleanBuyBids);
+    }
+
+    @Benchmark
+    public NavigableMap<Long, Long> searchTree() {
+        return DiscreteAuction.searchTree(cumulativeBuyBids);
+    }
+
+    @Benchmark
+    public DealResult makeDeal() {
+        return DiscreteAuction.match(cumulativeSellBids, buyBidsTree);
+    }
+
+    @Benchmark
+    public DealResult sweepMatch() {
+        return DiscreteAuction.match(cumulativeSellBids, cumulativeBuyBids);
+    }
+
+    @Benchmark
+    public DealResult histogramMatch() {
+        return priceLevelBook.match();
+    }
+}
@@ -0,0 +1,68 @@
+package com.moex;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение последовательного и параллельного ({@link CurveScan}) построения кумулятивных кривых
+ * и поиска оптимальной цены для инструментов с мелким шагом цены; по результатам выбирается
+ * порог {@link CurveScan#PARALLEL_THRESHOLD}:
+ *
+ * <pre>
+ * mvn -Pjmh package
+ * java -jar target/benchmarks.jar CurveScanBenchmark
+ * </pre>
+ *
+ * @author Alexey Prudnikov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class CurveScanBenchmark {
+
+    private static final long SEED = 20171212L;
+
+    @Param({"100000", "1000000", "4000000", "16000000"})
+    private int levels;
+
+    @Param({"false", "true"})
+    private boolean parallel;
+
+    private long[] volumes;
+    private long[] sums;
+    private PriceVolumes cumulativeSellBids;
+    private PriceVolumes cumulativeBuyBids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SEED);
+        volumes = new long[levels];
+        sums = new long[levels];
+        PriceVolumes sellBids = new PriceVolumes(levels);
+        PriceVolumes buyBids = new PriceVolumes(levels);
+        for (int i = 0; i < levels; i++) {
+            volumes[i] = 1 + random.nextInt(1000);
+            sellBids.add(i, 1 + random.nextInt(1000));
+            buyBids.add(levels - 1 - i, 1 + random.nextInt(1000));
+        }
+        cumulativeSellBids = sellBids.cumulative();
+        cumulativeBuyBids = buyBids.cumulative();
+    }
+
+    @Benchmark
+    public void prefixSums(Blackhole blackhole) {
+        CurveScan.prefixSums(volumes, sums, levels, parallel);
+        blackhole.consume(sums);
+    }
+
+    @Benchmark
+    public DealResult match() {
+        return CurveScan.match(cumulativeSellBids, cumulativeBuyBids, parallel);
+    }
+}
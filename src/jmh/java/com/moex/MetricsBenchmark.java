@@ -0,0 +1,83 @@
+package com.moex;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Накладные расходы показателей аукциона ({@link AuctionMetrics}) на полный цикл чтения
+ * и определения цены:
+ * - OFF - только длительности этапов и счетчики (по умолчанию);
+ * - SAMPLING - с замером занятой памяти на границах этапов ({@link AuctionMetrics#enableHeapSampling()});
+ * - POOL_RESET - для сравнения: сброс пиков всех пулов кучи перед чтением и их обход после
+ *   определения цены, как при прежнем сборе пикового объема памяти.
+ *
+ * <pre>
+ * mvn -Pjmh package
+ * java -jar target/benchmarks.jar MetricsBenchmark
+ * </pre>
+ *
+ * @author Alexey Prudnikov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    private static final long SEED = 20171212L;
+
+    public enum Mode {
+        OFF, SAMPLING, POOL_RESET
+    }
+
+    @Param({"5", "100000"})
+    private int size;
+
+    @Param({"OFF", "SAMPLING", "POOL_RESET"})
+    private Mode mode;
+
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size * 14);
+        new OrderFlowGenerator(SEED).generate(out, size);
+        data = out.toByteArray();
+    }
+
+    @Benchmark
+    public DealResult auction() {
+        DiscreteAuction auction = new DiscreteAuction(DiscreteAuction.Engine.SWEEP);
+        if (mode == Mode.SAMPLING) {
+            auction.getMetrics().enableHeapSampling();
+        }
+        if (mode == Mode.POOL_RESET) {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                    pool.resetPeakUsage();
+                }
+            }
+        }
+        auction.readData(new ByteArrayInputStream(data));
+        DealResult deal = auction.makeDeal();
+        if (mode == Mode.POOL_RESET) {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            deal = peak < 0 ? null : deal;
+        }
+        return deal;
+    }
+}
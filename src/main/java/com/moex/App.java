@@ -1,15 +1,164 @@
 package com.moex;
 
-import java.math.BigDecimal;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import javax.management.JMException;
 
 public class App {
 
-    static final BigDecimal ONE_HUNDRED = new BigDecimal(100);
+    private static final String MULTI_INSTRUMENT_OPTION = "--multi";
+    private static final String BINARY_OPTION = "--binary";
+    private static final String FILLS_OPTION = "--fills";
+    private static final String SERVER_OPTION = "--server";
+    private static final String METRICS_OPTION = "--metrics";
+    private static final String SPEC_OPTION = "--spec";
+    private static final String ENGINE_OPTION = "--engine";
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(Charset.defaultCharset());
 
-    public static void main(String[] args) {
-        DiscreteAuction auction = new DiscreteAuction();
-        auction.readData(System.in);
-        System.out.println(auction.makeDeal());
+    /**
+     * Запуск аукциона из командной строки; источник входных данных задается первым аргументом:
+     * - путь к файлу - файл с заявками разбирается параллельно;
+     * - без аргументов - заявки читаются из стандартного потока ввода;
+     * - {@code --multi} - заявки по множеству ценных бумаг из стандартного потока ввода,
+     *   результат выводится отдельной строкой для каждой бумаги;
+     * - {@code --binary PATH} - файл в двоичном формате ({@link BinaryBidFormat});
+     * - {@code --fills [ALLOCATION]} - заявки из стандартного потока ввода, после результата выводится
+     *   отчет об исполнении заявок (способ распределения, например {@code PRO_RATA});
+     * - {@code --server PORT [JOURNAL [SNAPSHOT]]} - сервер аукциона ({@link AuctionServer}) с журналом
+     *   событий и файлом снимков книги; при остановке сервера выводятся распределения задержек.
+     *
+     * Перед ними можно указать ключи (в этом порядке):
+     * - {@code --metrics} - показатели аукциона публикуются через JMX ({@link AuctionMetrics})
+     *   и выводятся итоговой строкой в стандартный поток ошибок (с {@code --multi} - распределение
+     *   задержек расчета по бумагам);
+     * - {@code --spec TICK:MIN_PRICE:MAX_PRICE:MIN_AMOUNT:MAX_AMOUNT} - шаг цены и диапазоны цены
+     *   и количества ({@link InstrumentSpec#valueOf(String)}), с {@code --multi} - для всех бумаг;
+     * - {@code --engine NAME} - способ определения цены, например {@code TREE}; без этого ключа способ
+     *   выбирается по статистике входных данных ({@link DiscreteAuction.Engine#AUTO}), а выбор выводится
+     *   строкой в стандартный поток ошибок.
+     * Ключи {@code --spec} и {@code --engine} не поддерживаются с {@code --server}, а {@code --engine} -
+     * с {@code --multi}.
+     */
+    public static void main(String[] args) throws IOException, JMException {
+        boolean metrics = args.length > 0 && METRICS_OPTION.equals(args[0]);
+        if (metrics) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        InstrumentSpec spec = InstrumentSpec.DEFAULT;
+        if (args.length > 1 && SPEC_OPTION.equals(args[0])) {
+            spec = InstrumentSpec.valueOf(args[1]);
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        DiscreteAuction.Engine engine = null;
+        if (args.length > 1 && ENGINE_OPTION.equals(args[0])) {
+            engine = DiscreteAuction.Engine.valueOf(args[1]);
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        if (args.length > 1 && SERVER_OPTION.equals(args[0])) {
+            // протокол сервера передает цены в копейках, а книга сервера не сортирует заявки
+            if (!spec.equals(InstrumentSpec.DEFAULT) || engine != null) {
+                throw new IllegalArgumentException(
+                    SPEC_OPTION + " and " + ENGINE_OPTION + " are not supported with " + SERVER_OPTION);
+            }
+            Path journal = args.length > 2 ? Paths.get(args[2]) : null;
+            Path snapshot = args.length > 3 ? Paths.get(args[3]) : null;
+            try (AuctionServer server = new AuctionServer(Integer.parseInt(args[1]), journal, snapshot,
+                AuctionServer.SNAPSHOT_INTERVAL)) {
+                System.err.println("Auction server is listening on port " + server.getPort());
+                // при остановке процесса выводятся распределения задержек
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    System.err.println("order latency: " + server.getOrderLatency().snapshot());
+                    System.err.println("deal latency: " + server.getDealLatency().snapshot());
+                }));
+                server.run();
+            }
+            return;
+        }
+
+        OutputStream out = new BufferedOutputStream(System.out);
+        byte[] buffer = new byte[DealResult.MAX_LENGTH];
+        DiscreteAuction auction = null;
+
+        if (args.length > 0 && MULTI_INSTRUMENT_OPTION.equals(args[0])) {
+            if (engine != null) {
+                throw new IllegalArgumentException(ENGINE_OPTION + " is not supported with " + MULTI_INSTRUMENT_OPTION);
+            }
+            MultiInstrumentAuction multiAuction = new MultiInstrumentAuction(
+                ForkJoinPool.commonPool(), spec, Collections.emptyMap());
+            multiAuction.readData(System.in);
+            for (Map.Entry<String, DealResult> deal : multiAuction.makeDeals().entrySet()) {
+                out.write(deal.getKey().getBytes(Charset.defaultCharset()));
+                out.write(' ');
+                print(out, buffer, deal.getValue());
+            }
+            if (metrics) {
+                System.err.println("deal latency: " + multiAuction.getDealLatency().snapshot());
+            }
+        }
+        else if (args.length > 0 && FILLS_OPTION.equals(args[0])) {
+            // распределению объема нужны заявки, поэтому по умолчанию они сортируются
+            auction = create(engine != null ? engine : DiscreteAuction.Engine.SWEEP, spec, metrics);
+            auction.readData(System.in);
+            print(out, buffer, auction.makeDeal());
+            ExecutionReportWriter report = new ExecutionReportWriter(Channels.newChannel(out), spec.getScale());
+            auction.allocate(report, args.length > 1 ?
+                DiscreteAuction.Allocation.valueOf(args[1]) : DiscreteAuction.Allocation.PRICE_TIME);
+            report.flush();
+        }
+        else if (args.length > 1 && BINARY_OPTION.equals(args[0])) {
+            auction = create(engine, spec, metrics);
+            auction.readBinaryData(Paths.get(args[1]));
+            print(out, buffer, auction.makeDeal());
+        }
+        else if (args.length > 0) {
+            auction = create(engine, spec, metrics);
+            auction.readData(Paths.get(args[0]));
+            print(out, buffer, auction.makeDeal());
+        }
+        else {
+            auction = create(engine, spec, metrics);
+            auction.readData(System.in);
+            print(out, buffer, auction.makeDeal());
+        }
+        out.flush();
+
+        if (auction != null && auction.getEngine() == DiscreteAuction.Engine.AUTO) {
+            System.err.println("engine: " + auction.getEngineChoice());
+        }
+        if (metrics && auction != null) {
+            System.err.println(auction.getMetrics().getSummary());
+        }
+    }
+
+    /**
+     * Создание аукциона (без явно заданного способа определения цены - {@link DiscreteAuction.Engine#AUTO});
+     * при необходимости его показатели регистрируются в JMX до начала чтения данных
+     */
+    private static DiscreteAuction create(DiscreteAuction.Engine engine, InstrumentSpec spec, boolean metrics)
+        throws JMException {
+        DiscreteAuction auction = new DiscreteAuction(engine != null ? engine : DiscreteAuction.Engine.AUTO, spec);
+        if (metrics) {
+            auction.getMetrics().register();
+        }
+        return auction;
+    }
+
+    /**
+     * Вывод строки результата через переиспользуемый буфер
+     */
+    private static void print(OutputStream out, byte[] buffer, DealResult deal) throws IOException {
+        out.write(buffer, 0, deal.writeTo(buffer, 0));
+        out.write(LINE_SEPARATOR);
     }
 
 }
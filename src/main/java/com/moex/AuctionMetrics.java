@@ -0,0 +1,244 @@
+package com.moex;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Показатели аукциона {@link DiscreteAuction}: длительность каждого этапа, количество принятых
+ * и отброшенных строк, количество заявок, отсеянных как заведомо неисполнимые
+ * ({@link FeasibleBidPredicate}), количество ценовых уровней после очистки и пиковый объем
+ * занятой памяти в куче.
+ *
+ * Этапы:
+ * - parse - чтение и разбор входных данных;
+ * - sort - отбор выполнимых заявок и их упорядочивание по приоритету;
+ * - clean - объединение заявок с одинаковыми ценами;
+ * - transform - расчет кумулятивных объемов;
+ * - index - построение дерева поиска ({@link DiscreteAuction.Engine#TREE});
+ * - match - определение оптимальной цены.
+ *
+ * Длительность измеряется один раз на этап, а не на заявку, поэтому длительности и счетчики
+ * собираются всегда; публикация через JMX ({@link #register()}) и итоговая строка ({@link #getSummary()}) -
+ * по запросу. Занятая память в куче замеряется только после включения ({@link #enableHeapSampling()},
+ * {@link #register()}): один запрос к {@link MemoryMXBean} на границе каждого этапа, пиковые значения
+ * пулов памяти JVM не сбрасываются, чтобы не мешать другим средствам мониторинга в процессе.
+ * Показатели записываются потоком аукциона и могут читаться из других потоков.
+ *
+ * @author Alexey Prudnikov
+ */
+public final class AuctionMetrics implements AuctionMetricsMXBean {
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private final DiscreteAuction.Engine engine;
+
+    private volatile boolean heapSampling;
+
+    private volatile DiscreteAuction.Engine selectedEngine;
+
+    private volatile long parseNanos;
+    private volatile long sortNanos;
+    private volatile long cleanNanos;
+    private volatile long transformNanos;
+    private volatile long indexNanos;
+    private volatile long matchNanos;
+    private volatile long acceptedLines;
+    private volatile long rejectedLines;
+    private volatile long prunedBids;
+    private volatile long priceLevels;
+    private volatile long peakHeapBytes;
+
+    AuctionMetrics(DiscreteAuction.Engine engine) {
+        this.engine = engine;
+        this.selectedEngine = engine;
+    }
+
+    /**
+     * Включение замера занятой памяти в куче ({@link #getPeakHeapBytes()}); до включения
+     * пиковый объем памяти равен 0
+     */
+    public void enableHeapSampling() {
+        heapSampling = true;
+    }
+
+    /**
+     * Начало нового аукциона: показатели обнуляются
+     */
+    void reset() {
+        selectedEngine = engine;
+        parseNanos = 0;
+        sortNanos = 0;
+        cleanNanos = 0;
+        transformNanos = 0;
+        indexNanos = 0;
+        matchNanos = 0;
+        acceptedLines = 0;
+        rejectedLines = 0;
+        prunedBids = 0;
+        priceLevels = 0;
+        peakHeapBytes = 0;
+        sampleHeap();
+    }
+
+    /**
+     * Замер занятой памяти в куче, если он включен; пиковым считается наибольший объем
+     * на границах этапов (оценка снизу: сборка мусора внутри этапа может скрыть пик)
+     */
+    private void sampleHeap() {
+        if (heapSampling) {
+            peakHeapBytes = Math.max(peakHeapBytes, MEMORY.getHeapMemoryUsage().getUsed());
+        }
+    }
+
+    /**
+     * Способ определения цены, выбранный по статистике входных данных ({@link DiscreteAuction.Engine#AUTO})
+     */
+    void selected(DiscreteAuction.Engine selected) {
+        selectedEngine = selected;
+    }
+
+    void parsed(long nanos, long lines, long accepted) {
+        parseNanos += nanos;
+        acceptedLines += accepted;
+        rejectedLines += lines - accepted;
+        sampleHeap();
+    }
+
+    void sorted(long nanos, long pruned) {
+        sortNanos += nanos;
+        prunedBids += pruned;
+        sampleHeap();
+    }
+
+    void cleaned(long nanos, long levels) {
+        cleanNanos += nanos;
+        priceLevels += levels;
+        sampleHeap();
+    }
+
+    void transformed(long nanos) {
+        transformNanos += nanos;
+        sampleHeap();
+    }
+
+    void indexed(long nanos) {
+        indexNanos += nanos;
+        sampleHeap();
+    }
+
+    /**
+     * Завершение аукциона: фиксируется длительность поиска цены
+     */
+    void matched(long nanos) {
+        matchNanos += nanos;
+        sampleHeap();
+    }
+
+    /**
+     * Регистрация показателей в платформенном MBeanServer под именем
+     * {@code com.moex:type=DiscreteAuction,engine=<engine>}; ранее зарегистрированные
+     * под этим именем показатели заменяются, а замер занятой памяти включается
+     *
+     * @return Имя, под которым зарегистрированы показатели
+     *
+     * @throws JMException Ошибка регистрации
+     */
+    public ObjectName register() throws JMException {
+        ObjectName name = new ObjectName("com.moex:type=DiscreteAuction,engine=" + engine);
+        if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        enableHeapSampling();
+        return name;
+    }
+
+    @Override
+    public String getEngine() {
+        return engine.name();
+    }
+
+    @Override
+    public String getSelectedEngine() {
+        return selectedEngine.name();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    @Override
+    public long getSortNanos() {
+        return sortNanos;
+    }
+
+    @Override
+    public long getCleanNanos() {
+        return cleanNanos;
+    }
+
+    @Override
+    public long getTransformNanos() {
+        return transformNanos;
+    }
+
+    @Override
+    public long getIndexNanos() {
+        return indexNanos;
+    }
+
+    @Override
+    public long getMatchNanos() {
+        return matchNanos;
+    }
+
+    @Override
+    public long getAcceptedLines() {
+        return acceptedLines;
+    }
+
+    @Override
+    public long getRejectedLines() {
+        return rejectedLines;
+    }
+
+    @Override
+    public long getPrunedBids() {
+        return prunedBids;
+    }
+
+    @Override
+    public long getPriceLevels() {
+        return priceLevels;
+    }
+
+    @Override
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    @Override
+    public String getSummary() {
+        return "engine=" + engine
+            + " parseNanos=" + parseNanos
+            + " sortNanos=" + sortNanos
+            + " cleanNanos=" + cleanNanos
+            + " transformNanos=" + transformNanos
+            + " indexNanos=" + indexNanos
+            + " matchNanos=" + matchNanos
+            + " acceptedLines=" + acceptedLines
+            + " rejectedLines=" + rejectedLines
+            + " prunedBids=" + prunedBids
+            + " priceLevels=" + priceLevels
+            + " peakHeapBytes=" + peakHeapBytes
+            + " selectedEngine=" + selectedEngine;
+    }
+
+    @Override
+    public String toString() {
+        return getSummary();
+    }
+}
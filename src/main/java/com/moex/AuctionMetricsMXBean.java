@@ -0,0 +1,49 @@
+package com.moex;
+
+/**
+ * Показатели последнего аукциона, публикуемые через JMX ({@link AuctionMetrics#register()}):
+ * длительности этапов в наносекундах и счетчики заявок
+ *
+ * @author Alexey Prudnikov
+ */
+public interface AuctionMetricsMXBean {
+
+    String getEngine();
+
+    /**
+     * @return Способ определения цены последнего аукциона; отличается от {@link #getEngine()},
+     *         если способ выбирается по статистике входных данных
+     */
+    String getSelectedEngine();
+
+    long getParseNanos();
+
+    long getSortNanos();
+
+    long getCleanNanos();
+
+    long getTransformNanos();
+
+    long getIndexNanos();
+
+    long getMatchNanos();
+
+    long getAcceptedLines();
+
+    long getRejectedLines();
+
+    long getPrunedBids();
+
+    long getPriceLevels();
+
+    /**
+     * @return Наибольший объем занятой памяти в куче на границах этапов; 0, если замер
+     *         не включен ({@link AuctionMetrics#enableHeapSampling()})
+     */
+    long getPeakHeapBytes();
+
+    /**
+     * @return Все показатели одной строкой вида {@code key=value}
+     */
+    String getSummary();
+}
@@ -0,0 +1,56 @@
+package com.moex;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR: этап аукциона {@link DiscreteAuction} (разбор, сортировка, очистка,
+ * трансформация, построение дерева поиска) с размерами входа и выхода этапа
+ *
+ * @author Alexey Prudnikov
+ */
+@Name("com.moex.AuctionPhase")
+@Label("Auction Phase")
+@Description("One phase of a discrete auction")
+@Category({"MOEX", "Auction"})
+@StackTrace(false)
+final class AuctionPhaseEvent extends Event {
+
+    @Label("Engine")
+    String engine;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Input Size")
+    @Description("Bids or price levels entering the phase")
+    long inputSize;
+
+    @Label("Output Size")
+    @Description("Bids or price levels produced by the phase")
+    long outputSize;
+
+    /**
+     * @return Начатое событие
+     */
+    static AuctionPhaseEvent start() {
+        AuctionPhaseEvent event = new AuctionPhaseEvent();
+        event.begin();
+        return event;
+    }
+
+    void finish(DiscreteAuction.Engine engine, String phase, long inputSize, long outputSize) {
+        end();
+        if (shouldCommit()) {
+            this.engine = engine.name();
+            this.phase = phase;
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            commit();
+        }
+    }
+}
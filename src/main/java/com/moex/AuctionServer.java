@@ -0,0 +1,476 @@
+package com.moex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Сервер аукциона: принимает заявки по TCP на локальном интерфейсе и накапливает их в книге
+ * {@link OrderBook}, поэтому последовательные аукционы не требуют повторного запуска JVM.
+ *
+ * Все соединения обслуживаются одним потоком через неблокирующий {@link Selector}; книга
+ * общая для всех соединений. Сообщения клиента (числа в порядке little-endian):
+ *
+ * <pre>
+ * 'B' | 'S', int amount, int price   заявка (9 байт, как запись {@link BinaryBidFormat}), без ответа
+ * 'X', int id                        снятие заявки по ее порядковому номеру в книге, без ответа
+ * 'I'                                запрос индикативного результата
+ * 'U'                                аукцион: результат и очистка книги для следующего аукциона
+ * </pre>
+ *
+ * На запросы 'I' и 'U' сервер отвечает сообщением {@code 'D', long amount, long price}
+ * (17 байт, цена в копейках, при отсутствии сделки объем и цена равны 0). Некорректные заявки
+ * отбрасываются, а неизвестный тип сообщения считается ошибкой протокола, и соединение закрывается.
+ *
+ * Если задан журнал ({@link OrderJournal}), то при запуске книга восстанавливается по нему,
+ * а каждая принятая заявка, снятие и проведение аукциона записываются в журнал до изменения
+ * книги (если запись не удалась, книга не опережает журнал); после проведения аукциона журнал
+ * сбрасывается на диск. Если задан также файл снимков, то через каждые
+ * {@code snapshotInterval} событий журнала снимок книги ({@link BookSnapshot}) записывается
+ * в отдельном потоке, не останавливая прием заявок, а при запуске книга восстанавливается
+ * из снимка и событий журнала после него.
+ *
+ * Задержки обработки каждой заявки (включая снятие) и каждого расчета результата аукциона
+ * записываются в гистограммы ({@link #getOrderLatency()}, {@link #getDealLatency()}),
+ * снимки которых можно получать из других потоков во время работы сервера.
+ *
+ * @author Alexey Prudnikov
+ */
+public final class AuctionServer implements Runnable, Closeable {
+
+    static final byte CANCEL = 'X';
+    static final byte INDICATIVE = 'I';
+    static final byte UNCROSS = 'U';
+    static final byte DEAL = 'D';
+    static final int ORDER_SIZE = BinaryBidFormat.RECORD_SIZE;
+    static final int CANCEL_SIZE = 1 + 4;
+    static final int DEAL_SIZE = 1 + 8 + 8;
+    static final long SNAPSHOT_INTERVAL = 1 << 20;
+
+    private static final int MIN_AMOUNT = ParseBidFunction.ACCEPTABLE_AMOUNT.getMinimum();
+    private static final int MAX_AMOUNT = ParseBidFunction.ACCEPTABLE_AMOUNT.getMaximum();
+    private static final long MIN_PRICE = ParseBidFunction.ACCEPTABLE_PRICE.getMinimum();
+    private static final long MAX_PRICE = ParseBidFunction.ACCEPTABLE_PRICE.getMaximum();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final OrderJournal journal;
+    private final Path snapshotFile;
+    private final long snapshotInterval;
+    private final ExecutorService snapshotWriter;
+    private final LatencyHistogram orderLatency = new LatencyHistogram();
+    private final LatencyHistogram dealLatency = new LatencyHistogram();
+
+    private volatile boolean running;
+    private volatile boolean closed;
+
+    private OrderBook book;
+    // изменяется только в потоке сервера и читается из других потоков
+    private volatile long rejectedCount;
+    private long snapshotSequence;
+    private Future<?> snapshotTask;
+
+    /**
+     * Запуск сервера на локальном интерфейсе
+     *
+     * @param port Номер порта (0 - любой свободный порт, см. {@link #getPort()})
+     *
+     * @throws IOException Ошибка открытия порта
+     */
+    public AuctionServer(int port) throws IOException {
+        this(port, null);
+    }
+
+    /**
+     * Запуск сервера на локальном интерфейсе с журналом событий
+     *
+     * @param port Номер порта (0 - любой свободный порт, см. {@link #getPort()})
+     * @param journalFile Путь к файлу журнала ({@code null} - без журнала)
+     *
+     * @throws IOException Ошибка открытия порта или журнала
+     */
+    public AuctionServer(int port, Path journalFile) throws IOException {
+        this(port, journalFile, null, 0);
+    }
+
+    /**
+     * Запуск сервера на локальном интерфейсе с журналом событий и снимками книги
+     *
+     * @param port Номер порта (0 - любой свободный порт, см. {@link #getPort()})
+     * @param journalFile Путь к файлу журнала ({@code null} - без журнала)
+     * @param snapshotFile Путь к файлу снимка книги ({@code null} - без снимков)
+     * @param snapshotInterval Количество событий журнала между снимками
+     *
+     * @throws IOException Ошибка открытия порта, журнала или чтения снимка
+     */
+    public AuctionServer(int port, Path journalFile, Path snapshotFile, long snapshotInterval) throws IOException {
+        if (snapshotFile != null && journalFile == null) {
+            throw new IllegalArgumentException("Book snapshots require an order journal");
+        }
+        this.snapshotFile = snapshotFile;
+        this.snapshotInterval = snapshotInterval;
+
+        BookSnapshot snapshot = snapshotFile != null && Files.exists(snapshotFile) ? BookSnapshot.read(snapshotFile) : null;
+        OrderJournal.BookRecovery recovery = new OrderJournal.BookRecovery(
+            snapshot == null ? new OrderBook() : snapshot.toBook());
+        snapshotSequence = snapshot == null ? 0 : snapshot.getSequence();
+        journal = journalFile == null ? null : new OrderJournal(journalFile, snapshotSequence, recovery);
+        book = recovery.getBook();
+        snapshotWriter = snapshotFile == null ? null : Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return Номер порта, на котором сервер принимает соединения
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return Количество отброшенных некорректных заявок
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return Задержки обработки заявок и их снятия в наносекундах
+     */
+    public LatencyHistogram getOrderLatency() {
+        return orderLatency;
+    }
+
+    /**
+     * @return Задержки расчета индикативного результата и проведения аукциона в наносекундах
+     */
+    public LatencyHistogram getDealLatency() {
+        return dealLatency;
+    }
+
+    /**
+     * Обработка соединений до закрытия сервера ({@link #close()})
+     */
+    @Override
+    public void run() {
+        running = true;
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        finally {
+            release();
+        }
+    }
+
+    private void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            SocketChannel channel = serverChannel.accept();
+            if (channel != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                channel.register(selector, SelectionKey.OP_READ, new Connection());
+            }
+            return;
+        }
+
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isWritable()) {
+                write(key, channel, connection);
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(key, channel, connection);
+            }
+        }
+        catch (IOException ex) {
+            // разрыв соединения клиентом не должен останавливать сервер
+            disconnect(key);
+        }
+    }
+
+    private void read(SelectionKey key, SocketChannel channel, Connection connection) throws IOException {
+        if (channel.read(connection.input) < 0) {
+            disconnect(key);
+            return;
+        }
+
+        ByteBuffer input = connection.input;
+        input.flip();
+        boolean valid = decode(input, connection.output);
+        input.compact();
+        if (!valid) {
+            disconnect(key);
+            return;
+        }
+        write(key, channel, connection);
+    }
+
+    /**
+     * Разбор всех полностью полученных сообщений; ошибка записи в журнал останавливает сервер
+     *
+     * @return {@code false} при ошибке протокола
+     */
+    private boolean decode(ByteBuffer input, ByteBuffer output) {
+        try {
+            boolean valid = decodeMessages(input, output);
+            snapshot();
+            return valid;
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private boolean decodeMessages(ByteBuffer input, ByteBuffer output) throws IOException {
+        while (input.hasRemaining()) {
+            byte type = input.get(input.position());
+            if (type == 'B' || type == 'S') {
+                if (input.remaining() < ORDER_SIZE) {
+                    return true;
+                }
+                long start = System.nanoTime();
+                input.get();
+                int amount = input.getInt();
+                long price = input.getInt();
+                if (amount < MIN_AMOUNT || amount > MAX_AMOUNT || price < MIN_PRICE || price > MAX_PRICE) {
+                    rejectedCount++;
+                }
+                else {
+                    Bid.BidType bidType = type == 'B' ? Bid.BidType.B : Bid.BidType.S;
+                    // событие записывается в журнал до изменения книги
+                    if (journal != null) {
+                        journal.appendBid(bidType, amount, price);
+                    }
+                    book.addBid(bidType, amount, price);
+                }
+                orderLatency.record(System.nanoTime() - start);
+            }
+            else if (type == CANCEL) {
+                if (input.remaining() < CANCEL_SIZE) {
+                    return true;
+                }
+                long start = System.nanoTime();
+                input.get();
+                cancel(input.getInt());
+                orderLatency.record(System.nanoTime() - start);
+            }
+            else if (type == INDICATIVE || type == UNCROSS) {
+                if (output.remaining() < DEAL_SIZE) {
+                    // ответы не успевают отправляться: остальные сообщения будут разобраны после записи
+                    return true;
+                }
+                long start = System.nanoTime();
+                input.get();
+                DealResult deal = book.currentIndicativeDeal();
+                output.put(DEAL).putLong(deal.getBestAmount()).putLong(deal.getBestPrice());
+                if (type == UNCROSS) {
+                    if (journal != null) {
+                        journal.appendUncross();
+                        journal.flush();
+                    }
+                    book = new OrderBook();
+                }
+                dealLatency.record(System.nanoTime() - start);
+            }
+            else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void cancel(int id) throws IOException {
+        if (!book.isActive(id)) {
+            rejectedCount++;
+            return;
+        }
+        if (journal != null) {
+            journal.appendCancel(id);
+        }
+        book.cancelBid(id);
+    }
+
+    /**
+     * Запуск записи снимка книги в отдельном потоке, если с предыдущего снимка накопилось
+     * достаточно событий и его запись завершена
+     */
+    private void snapshot() throws IOException {
+        if (snapshotWriter == null || journal.getSequence() - snapshotSequence < snapshotInterval) {
+            return;
+        }
+        if (snapshotTask != null) {
+            if (!snapshotTask.isDone()) {
+                return;
+            }
+            awaitSnapshot();
+        }
+
+        // события, учтенные в снимке, должны быть на диске раньше самого снимка
+        journal.flush();
+        BookSnapshot snapshot = book.snapshot(journal.getSequence());
+        snapshotSequence = snapshot.getSequence();
+        snapshotTask = snapshotWriter.submit(() -> {
+            snapshot.write(snapshotFile);
+            return null;
+        });
+    }
+
+    /**
+     * Ожидание записи последнего снимка; ошибка записи снимка останавливает сервер, как и ошибка журнала
+     */
+    private void awaitSnapshot() throws IOException {
+        try {
+            snapshotTask.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing book snapshot");
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Отправка ответов; после полной отправки разбираются сообщения, отложенные из-за заполненного
+     * буфера ответов ({@link #decodeMessages(ByteBuffer, ByteBuffer)}), и разбор чередуется с отправкой,
+     * пока не останется полных сообщений или канал не переполнится. Иначе ожидающие запросы клиента,
+     * отправившего их одним пакетом, остались бы без ответа до поступления от него новых данных.
+     */
+    private void write(SelectionKey key, SocketChannel channel, Connection connection) throws IOException {
+        ByteBuffer output = connection.output;
+        ByteBuffer input = connection.input;
+        while (true) {
+            output.flip();
+            channel.write(output);
+            output.compact();
+            if (output.position() > 0) {
+                // канал переполнен: чтение приостанавливается до освобождения буфера ответов
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            if (input.position() == 0) {
+                return;
+            }
+
+            input.flip();
+            boolean valid = decode(input, output);
+            input.compact();
+            if (!valid) {
+                disconnect(key);
+                return;
+            }
+            if (output.position() == 0) {
+                // остались только неполные сообщения
+                return;
+            }
+        }
+    }
+
+    private static void disconnect(SelectionKey key) throws IOException {
+        key.cancel();
+        key.channel().close();
+    }
+
+    /**
+     * Остановка сервера: поток, выполняющий {@link #run()}, закрывает все соединения и завершается
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (running) {
+            selector.wakeup();
+        }
+        else {
+            release();
+        }
+    }
+
+    private synchronized void release() {
+        try {
+            if (selector.isOpen()) {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            }
+            serverChannel.close();
+            try {
+                if (snapshotWriter != null) {
+                    snapshotWriter.shutdown();
+                    if (snapshotTask != null) {
+                        awaitSnapshot();
+                    }
+                }
+            }
+            finally {
+                if (journal != null) {
+                    journal.close();
+                }
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Буферы соединения
+     */
+    private static final class Connection {
+
+        private final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
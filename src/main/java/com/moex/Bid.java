@@ -2,7 +2,9 @@ package com.moex;
 
 /**
  * Заявка на покупку или продажу ценной бумаги,
- * сумма заявки хранится в копейках как целое число
+ * цена заявки хранится целым числом в минимальных единицах цены (см. {@link InstrumentSpec#getScale()});
+ * количество хранится в long, так как после объединения и трансформации заявок оно может
+ * превысить диапазон int
  *
  * @author Alexey Prudnikov
  */
@@ -11,10 +13,10 @@ public final class Bid implements Comparable<Bid> {
     enum BidType {B, S}
 
     private final BidType type;
-    private final int amount;
+    private final long amount;
     private final long price;
 
-    public Bid(BidType type, int amount, long price) {
+    public Bid(BidType type, long amount, long price) {
         this.type = type;
         this.amount = amount;
         this.price = price;
@@ -24,7 +26,7 @@ public final class Bid implements Comparable<Bid> {
         return type;
     }
 
-    public int getAmount() {
+    public long getAmount() {
         return amount;
     }
 
@@ -0,0 +1,138 @@
+package com.moex;
+
+import java.util.Arrays;
+
+/**
+ * Хранилище заявок "по столбцам": тип, количество и цена каждой заявки хранятся в отдельных
+ * примитивных массивах, а заявка определяется своим индексом (порядком поступления).
+ * На одну заявку приходится 13 байт без заголовков объектов и ссылок.
+ *
+ * Массивы растут блоками фиксированного размера: при добавлении заявок уже заполненные блоки
+ * не копируются, поэтому рост хранилища не требует непрерывного участка памяти двойного размера.
+ * Первый блок, пока он не заполнен, растет удвоением, чтобы небольшие хранилища
+ * (например, по отдельным ценным бумагам в {@link MultiInstrumentAuction}) занимали мало памяти.
+ *
+ * Копия хранилища для снимка книги ({@link #share()}) создается без копирования заявок: блоки
+ * становятся общими для обоих хранилищ и копируются только перед первым изменением в одном из них.
+ *
+ * @author Alexey Prudnikov
+ */
+public final class BidColumns implements BidConsumer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final Bid.BidType[] BID_TYPES = Bid.BidType.values();
+
+    private byte[][] types = {new byte[INITIAL_CAPACITY]};
+    private int[][] amounts = {new int[INITIAL_CAPACITY]};
+    private long[][] prices = {new long[INITIAL_CAPACITY]};
+    // блоки, общие с другим хранилищем
+    private boolean[] shared = {false};
+    private int size;
+
+    @Override
+    public void accept(Bid.BidType type, int amount, long price) {
+        add(type, amount, price);
+    }
+
+    /**
+     * Добавление заявки
+     *
+     * @return Индекс добавленной заявки
+     */
+    public int add(Bid.BidType type, int amount, long price) {
+        int chunk = size >>> CHUNK_SHIFT;
+        int offset = size & CHUNK_MASK;
+        if (chunk == types.length) {
+            addChunk();
+        }
+        else if (offset == types[chunk].length) {
+            growFirstChunk();
+        }
+        else if (shared[chunk]) {
+            copyChunk(chunk);
+        }
+        types[chunk][offset] = (byte) type.ordinal();
+        amounts[chunk][offset] = amount;
+        prices[chunk][offset] = price;
+        return size++;
+    }
+
+    private void addChunk() {
+        int chunks = types.length + 1;
+        types = Arrays.copyOf(types, chunks);
+        amounts = Arrays.copyOf(amounts, chunks);
+        prices = Arrays.copyOf(prices, chunks);
+        shared = Arrays.copyOf(shared, chunks);
+        types[chunks - 1] = new byte[CHUNK_SIZE];
+        amounts[chunks - 1] = new int[CHUNK_SIZE];
+        prices[chunks - 1] = new long[CHUNK_SIZE];
+    }
+
+    private void growFirstChunk() {
+        int capacity = Math.min(types[0].length * 2, CHUNK_SIZE);
+        types[0] = Arrays.copyOf(types[0], capacity);
+        amounts[0] = Arrays.copyOf(amounts[0], capacity);
+        prices[0] = Arrays.copyOf(prices[0], capacity);
+        shared[0] = false;
+    }
+
+    private void copyChunk(int chunk) {
+        types[chunk] = types[chunk].clone();
+        amounts[chunk] = amounts[chunk].clone();
+        prices[chunk] = prices[chunk].clone();
+        shared[chunk] = false;
+    }
+
+    /**
+     * Копия хранилища за время, пропорциональное количеству блоков, а не заявок; после
+     * передачи копии другому потоку оба хранилища можно использовать независимо
+     *
+     * @return Хранилище с теми же заявками
+     */
+    BidColumns share() {
+        BidColumns copy = new BidColumns();
+        copy.types = types.clone();
+        copy.amounts = amounts.clone();
+        copy.prices = prices.clone();
+        Arrays.fill(shared, true);
+        copy.shared = shared.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Bid.BidType getType(int index) {
+        return BID_TYPES[types[index >>> CHUNK_SHIFT][index & CHUNK_MASK]];
+    }
+
+    public int getAmount(int index) {
+        return amounts[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    public long getPrice(int index) {
+        return prices[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    void setAmount(int index, int amount) {
+        unshare(index);
+        amounts[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = amount;
+    }
+
+    void setPrice(int index, long price) {
+        unshare(index);
+        prices[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = price;
+    }
+
+    private void unshare(int index) {
+        int chunk = index >>> CHUNK_SHIFT;
+        if (shared[chunk]) {
+            copyChunk(chunk);
+        }
+    }
+}
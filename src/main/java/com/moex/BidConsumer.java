@@ -0,0 +1,20 @@
+package com.moex;
+
+/**
+ * Получатель разобранных заявок: позволяет передавать тип, количество и цену
+ * заявки без создания промежуточного объекта {@link Bid}
+ *
+ * @author Alexey Prudnikov
+ */
+@FunctionalInterface
+public interface BidConsumer {
+
+    /**
+     * Обработка очередной корректной заявки
+     *
+     * @param type Тип заявки
+     * @param amount Количество ценных бумаг
+     * @param price Цена заявки в минимальных единицах цены (см. {@link InstrumentSpec#getScale()})
+     */
+    void accept(Bid.BidType type, int amount, long price);
+}
@@ -0,0 +1,99 @@
+package com.moex;
+
+import java.math.BigDecimal;
+
+/**
+ * Статистика входных заявок, собираемая во время чтения для выбора способа определения
+ * оптимальной цены ({@link DiscreteAuction.Engine#AUTO}): количество заявок, диапазон цен
+ * и оценка количества различных ценовых уровней.
+ *
+ * Количество уровней оценивается линейным подсчетом (linear counting): номер уровня хешируется
+ * в битовую карту из {@value #BITMAP_BITS} бит, а по доле нулевых бит z оценка равна
+ * {@code -m * ln(z)}. Память постоянна (8 КБ), обработка заявки - несколько арифметических
+ * операций; оценка точна в пределах нескольких процентов примерно до 300 тысяч уровней,
+ * а при заполнении всей карты ограничивается диапазоном цен.
+ *
+ * @author Alexey Prudnikov
+ */
+final class BidStatistics implements BidConsumer {
+
+    static final int BITMAP_BITS = 1 << 16;
+
+    private final InstrumentSpec spec;
+    private final long[] bitmap = new long[BITMAP_BITS / Long.SIZE];
+
+    private long count;
+    private long minPrice = Long.MAX_VALUE;
+    private long maxPrice = Long.MIN_VALUE;
+
+    /**
+     * @param spec Сетка цен, по уровням которой оценивается количество различных цен
+     */
+    BidStatistics(InstrumentSpec spec) {
+        this.spec = spec;
+    }
+
+    @Override
+    public void accept(Bid.BidType type, int amount, long price) {
+        count++;
+        minPrice = Math.min(minPrice, price);
+        maxPrice = Math.max(maxPrice, price);
+        int bit = (int) (mix(spec.level(price)) >>> (Long.SIZE - Integer.numberOfTrailingZeros(BITMAP_BITS)));
+        bitmap[bit >>> 6] |= 1L << bit;
+    }
+
+    /**
+     * Перемешивание бит номера уровня (финализатор MurmurHash3): линейный подсчет предполагает
+     * равномерное распределение хешей, а соседние уровни при мультипликативном хешировании
+     * распределяются слишком регулярно, что завышает оценку
+     */
+    private static long mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return Количество заявок
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Оценка количества различных ценовых уровней (не больше количества заявок
+     *         и количества уровней между минимальной и максимальной ценой)
+     */
+    long distinctLevels() {
+        if (count == 0) {
+            return 0;
+        }
+        long ones = 0;
+        for (long word : bitmap) {
+            ones += Long.bitCount(word);
+        }
+        long span = spec.level(maxPrice) - spec.level(minPrice) + 1;
+        long zeros = BITMAP_BITS - ones;
+        if (zeros == 0) {
+            // карта заполнена: уровней заведомо больше, чем оценивается линейным подсчетом
+            return Math.min(span, count);
+        }
+        long estimate = Math.round(-BITMAP_BITS * Math.log((double) zeros / BITMAP_BITS));
+        return Math.min(Math.min(Math.max(estimate, 1), span), count);
+    }
+
+    @Override
+    public String toString() {
+        if (count == 0) {
+            return "bids=0";
+        }
+        return "bids=" + count
+            + " levels~" + distinctLevels()
+            + " prices=" + BigDecimal.valueOf(minPrice, spec.getScale()).toPlainString()
+            + ".." + BigDecimal.valueOf(maxPrice, spec.getScale()).toPlainString();
+    }
+}
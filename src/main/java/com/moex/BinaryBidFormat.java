@@ -0,0 +1,168 @@
+package com.moex;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Компактный двоичный формат файла с заявками.
+ *
+ * Файл начинается с заголовка (сигнатура {@code MXB1} и версия формата, по 4 байта), за которым
+ * следуют записи фиксированной длины по 9 байт: тип заявки (байт {@code 'B'} или {@code 'S'}),
+ * количество ценных бумаг и цена в копейках (int, little-endian). В файл попадают только корректные
+ * заявки, поэтому при чтении разбирать текст не нужно: файл отображается в память, а записи
+ * читаются напрямую из {@link MappedByteBuffer} без создания объектов {@link Bid}.
+ *
+ * Преобразование текстового файла в двоичный из командной строки:
+ *
+ * <pre>
+ * java -cp moex-case.jar com.moex.BinaryBidFormat orders.txt orders.bin
+ * </pre>
+ *
+ * @author Alexey Prudnikov
+ */
+public final class BinaryBidFormat {
+
+    static final int MAGIC = 0x3142584D; // "MXB1" в порядке little-endian
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 9;
+
+    private static final int MIN_AMOUNT = ParseBidFunction.ACCEPTABLE_AMOUNT.getMinimum();
+    private static final int MAX_AMOUNT = ParseBidFunction.ACCEPTABLE_AMOUNT.getMaximum();
+    private static final long MIN_PRICE = ParseBidFunction.ACCEPTABLE_PRICE.getMinimum();
+    private static final long MAX_PRICE = ParseBidFunction.ACCEPTABLE_PRICE.getMaximum();
+
+    // размер отображаемого в память участка, кратный размеру записи
+    private static final long MAPPING_SIZE = (Integer.MAX_VALUE / RECORD_SIZE) * (long) RECORD_SIZE;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private BinaryBidFormat() {
+    }
+
+    /**
+     * Преобразование текстового формата в двоичный; некорректные строки отбрасываются
+     *
+     * @param text Поток с входными данными в текстовом формате
+     * @param binary Поток для записи в двоичном формате (не закрывается)
+     *
+     * @return Количество записанных заявок
+     *
+     * @throws IOException Ошибка чтения или записи
+     */
+    public static long convert(InputStream text, OutputStream binary) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION);
+
+        long[] records = new long[1];
+        try {
+            new BidParser().parse(text, (type, amount, price) -> {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    write(binary, buffer);
+                }
+                buffer.put((byte) (type == Bid.BidType.B ? 'B' : 'S')).putInt(amount).putInt((int) price);
+                records[0]++;
+            });
+        }
+        catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        write(binary, buffer);
+        binary.flush();
+        return records[0];
+    }
+
+    private static void write(OutputStream binary, ByteBuffer buffer) {
+        try {
+            binary.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Преобразование текстового файла в двоичный
+     *
+     * @return Количество записанных заявок
+     *
+     * @throws IOException Ошибка чтения или записи
+     */
+    public static long convert(Path text, Path binary) throws IOException {
+        try (InputStream in = Files.newInputStream(text);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(binary))) {
+            return convert(in, out);
+        }
+    }
+
+    /**
+     * Чтение заявок из двоичного файла
+     *
+     * @param dataSource Путь к файлу в двоичном формате
+     * @param consumer Получатель заявок
+     * @param maxBids Максимальное количество заявок, которое будет прочитано
+     *
+     * @return Количество прочитанных заявок
+     *
+     * @throws IOException Ошибка чтения файла, неверный заголовок или поврежденная запись
+     */
+    public static long read(Path dataSource, BidConsumer consumer, long maxBids) throws IOException {
+        try (FileChannel channel = FileChannel.open(dataSource, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (size < HEADER_SIZE || channel.read(header, 0) != HEADER_SIZE
+                || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a binary bid file: " + dataSource);
+            }
+            if ((size - HEADER_SIZE) % RECORD_SIZE != 0) {
+                throw new IOException("Truncated binary bid file: " + dataSource);
+            }
+
+            long bids = Math.min((size - HEADER_SIZE) / RECORD_SIZE, maxBids);
+            long read = 0;
+            for (long offset = HEADER_SIZE; read < bids; offset += MAPPING_SIZE) {
+                MappedByteBuffer data = channel.map(
+                    FileChannel.MapMode.READ_ONLY, offset, Math.min(MAPPING_SIZE, size - offset));
+                data.order(ByteOrder.LITTLE_ENDIAN);
+                int count = (int) Math.min(data.capacity() / RECORD_SIZE, bids - read);
+                IngestChunkEvent chunk = IngestChunkEvent.start();
+                for (int i = 0, position = 0; i < count; i++, position += RECORD_SIZE) {
+                    byte type = data.get(position);
+                    int amount = data.getInt(position + 1);
+                    long price = data.getInt(position + 5);
+                    if (type != 'B' && type != 'S' || amount < MIN_AMOUNT || amount > MAX_AMOUNT
+                        || price < MIN_PRICE || price > MAX_PRICE) {
+                        throw new IOException("Corrupted record " + (read + i) + " in " + dataSource);
+                    }
+                    consumer.accept(type == 'B' ? Bid.BidType.B : Bid.BidType.S, amount, price);
+                }
+                if (chunk != null) {
+                    chunk.finish("binary", offset, (long) count * RECORD_SIZE, count, count);
+                }
+                read += count;
+            }
+            return read;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BinaryBidFormat <text file> <binary file>");
+            System.exit(1);
+        }
+        long bids = convert(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println(bids + " bids written");
+    }
+}
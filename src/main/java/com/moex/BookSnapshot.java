@@ -0,0 +1,266 @@
+package com.moex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Снимок книги заявок на момент события журнала ({@link OrderJournal}) с номером
+ * {@link #getSequence()}: после перезапуска книга восстанавливается из последнего снимка и
+ * событий журнала после него, поэтому время восстановления зависит от размера книги,
+ * а не от длины торговой сессии.
+ *
+ * Файл снимка (числа в порядке little-endian):
+ *
+ * <pre>
+ * int magic, int version, long sequence, int levels, int orders, 8 байт резерва   заголовок, 32 байта
+ * levels x (long price, long buyVolume, long sellVolume)                          непустые ценовые уровни
+ * orders x byte type, orders x int amount, orders x long price                    заявки по столбцам
+ * int checksum                                                                    CRC32C всех предыдущих байт
+ * </pre>
+ *
+ * Заявки записываются в порядке поступления, включая снятые (с нулевым количеством), чтобы
+ * идентификаторы заявок в событиях журнала после снимка сохраняли смысл. Снимок записывается
+ * во временный файл, который затем атомарно заменяет предыдущий снимок, поэтому при сбое во время
+ * записи остается последний полный снимок. Поля снимка проверяются при чтении, а контрольная
+ * сумма позволяет обнаружить поврежденный файл вместо восстановления неверной книги.
+ *
+ * @author Alexey Prudnikov
+ */
+public final class BookSnapshot {
+
+    static final int MAGIC = 0x3153584D; // "MXS1" в порядке little-endian
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 32;
+
+    private static final int LEVEL_SIZE = 3 * 8;
+    private static final int ORDER_SIZE = 1 + 4 + 8;
+    private static final int CHECKSUM_SIZE = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Bid.BidType[] BID_TYPES = Bid.BidType.values();
+
+    private final long sequence;
+    private final long minPrice;
+    private final long[] buyLevelVolumes;
+    private final long[] sellLevelVolumes;
+    private final BidColumns orders;
+
+    /**
+     * @param sequence Номер последнего события журнала, учтенного в снимке
+     * @param minPrice Цена первого ценового уровня в копейках
+     * @param buyLevelVolumes Объемы покупок по ценовым уровням с шагом в одну копейку
+     * @param sellLevelVolumes Объемы продаж по ценовым уровням с шагом в одну копейку
+     * @param orders Заявки книги
+     */
+    BookSnapshot(long sequence, long minPrice, long[] buyLevelVolumes, long[] sellLevelVolumes, BidColumns orders) {
+        this.sequence = sequence;
+        this.minPrice = minPrice;
+        this.buyLevelVolumes = buyLevelVolumes;
+        this.sellLevelVolumes = sellLevelVolumes;
+        this.orders = orders;
+    }
+
+    /**
+     * @return Номер последнего события журнала, учтенного в снимке
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return Количество заявок в снимке, включая снятые
+     */
+    public int getOrderCount() {
+        return orders.size();
+    }
+
+    /**
+     * @return Книга заявок, восстановленная из снимка
+     */
+    public OrderBook toBook() {
+        return new OrderBook(orders, buyLevelVolumes, sellLevelVolumes);
+    }
+
+    /**
+     * Запись снимка; существующий файл заменяется только после полной записи нового снимка
+     *
+     * @param file Путь к файлу снимка
+     *
+     * @throws IOException Ошибка записи файла
+     */
+    public void write(Path file) throws IOException {
+        int levels = 0;
+        for (int level = 0; level < buyLevelVolumes.length; level++) {
+            if (buyLevelVolumes[level] != 0 || sellLevelVolumes[level] != 0) {
+                levels++;
+            }
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32C checksum = new CRC32C();
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(sequence).putInt(levels).putInt(orders.size()).putLong(0);
+
+            for (int level = 0; level < buyLevelVolumes.length; level++) {
+                if (buyLevelVolumes[level] != 0 || sellLevelVolumes[level] != 0) {
+                    reserve(channel, buffer, LEVEL_SIZE, checksum);
+                    buffer.putLong(minPrice + level).putLong(buyLevelVolumes[level]).putLong(sellLevelVolumes[level]);
+                }
+            }
+            for (int i = 0; i < orders.size(); i++) {
+                reserve(channel, buffer, 1, checksum);
+                buffer.put((byte) orders.getType(i).ordinal());
+            }
+            for (int i = 0; i < orders.size(); i++) {
+                reserve(channel, buffer, 4, checksum);
+                buffer.putInt(orders.getAmount(i));
+            }
+            for (int i = 0; i < orders.size(); i++) {
+                reserve(channel, buffer, 8, checksum);
+                buffer.putLong(orders.getPrice(i));
+            }
+            // все записанные байты учитываются в контрольной сумме до ее записи
+            reserve(channel, buffer, BUFFER_SIZE, checksum);
+            buffer.putInt((int) checksum.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Запись накопленных данных с учетом в контрольной сумме, если в буфере не осталось места
+     * для следующего значения
+     */
+    private static void reserve(FileChannel channel, ByteBuffer buffer, int bytes, CRC32C checksum) throws IOException {
+        if (buffer.remaining() < bytes) {
+            update(checksum, buffer);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Чтение снимка
+     *
+     * @param file Путь к файлу снимка
+     *
+     * @return Снимок книги
+     *
+     * @throws IOException Ошибка чтения файла, файл не является снимком или поврежден
+     */
+    public static BookSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32C checksum = new CRC32C();
+            buffer.flip();
+            require(channel, buffer, HEADER_SIZE, checksum, file);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a book snapshot: " + file);
+            }
+            long sequence = buffer.getLong();
+            int levels = buffer.getInt();
+            int orderCount = buffer.getInt();
+            buffer.getLong();
+            // размер файла проверяется до выделения памяти под заявки
+            if (levels < 0 || levels > PriceLevelBook.LEVELS || orderCount < 0
+                || channel.size() != HEADER_SIZE + (long) levels * LEVEL_SIZE + (long) orderCount * ORDER_SIZE + CHECKSUM_SIZE) {
+                throw new IOException("Invalid snapshot size: " + levels + " levels, " + orderCount
+                    + " orders in " + channel.size() + " bytes of " + file);
+            }
+
+            long minPrice = PriceLevelBook.MIN_PRICE;
+            long[] buyLevelVolumes = new long[PriceLevelBook.LEVELS];
+            long[] sellLevelVolumes = new long[PriceLevelBook.LEVELS];
+            for (int i = 0; i < levels; i++) {
+                require(channel, buffer, LEVEL_SIZE, checksum, file);
+                long level = buffer.getLong() - minPrice;
+                if (level < 0 || level >= PriceLevelBook.LEVELS) {
+                    throw new IOException("Price level is out of range in snapshot " + file);
+                }
+                buyLevelVolumes[(int) level] = buffer.getLong();
+                sellLevelVolumes[(int) level] = buffer.getLong();
+                if (buyLevelVolumes[(int) level] < 0 || sellLevelVolumes[(int) level] < 0) {
+                    throw new IOException("Negative level volume in snapshot " + file);
+                }
+            }
+
+            byte[] types = new byte[orderCount];
+            int[] amounts = new int[orderCount];
+            for (int i = 0; i < orderCount; i++) {
+                require(channel, buffer, 1, checksum, file);
+                types[i] = buffer.get();
+                if (types[i] < 0 || types[i] >= BID_TYPES.length) {
+                    throw new IOException("Invalid order type " + types[i] + " in snapshot " + file);
+                }
+            }
+            for (int i = 0; i < orderCount; i++) {
+                require(channel, buffer, 4, checksum, file);
+                amounts[i] = buffer.getInt();
+                if (amounts[i] < 0) {
+                    // снятые заявки хранятся с нулевым количеством
+                    throw new IOException("Negative order amount " + amounts[i] + " in snapshot " + file);
+                }
+            }
+            BidColumns orders = new BidColumns();
+            for (int i = 0; i < orderCount; i++) {
+                require(channel, buffer, 8, checksum, file);
+                long price = buffer.getLong();
+                if (price < minPrice || price >= minPrice + PriceLevelBook.LEVELS) {
+                    throw new IOException("Order price is out of range in snapshot " + file);
+                }
+                orders.add(BID_TYPES[types[i]], amounts[i], price);
+            }
+
+            require(channel, buffer, CHECKSUM_SIZE, checksum, file);
+            update(checksum, buffer);
+            if (buffer.getInt() != (int) checksum.getValue()) {
+                throw new IOException("Checksum mismatch in snapshot " + file);
+            }
+            return new BookSnapshot(sequence, minPrice, buyLevelVolumes, sellLevelVolumes, orders);
+        }
+    }
+
+    /**
+     * Чтение следующего участка файла, если в буфере осталось меньше {@code bytes} байт;
+     * прочитанные из буфера байты учитываются в контрольной сумме
+     */
+    private static void require(FileChannel channel, ByteBuffer buffer, int bytes, CRC32C checksum, Path file)
+        throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        update(checksum, buffer);
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of snapshot " + file);
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Учет в контрольной сумме байт буфера от начала до текущей позиции: записанных
+     * при записи снимка или прочитанных при чтении
+     */
+    private static void update(CRC32C checksum, ByteBuffer buffer) {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.flip();
+        checksum.update(bytes);
+    }
+}
@@ -0,0 +1,69 @@
+package com.moex;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR: изменение инкрементальной книги заявок ({@link OrderBook}). Событие возникает
+ * на каждую заявку, поэтому по умолчанию выключено и включается настройками записи
+ * ({@code com.moex.BookUpdate#enabled=true})
+ *
+ * @author Alexey Prudnikov
+ */
+@Name("com.moex.BookUpdate")
+@Label("Book Update")
+@Description("Add, cancel or amend of a bid in the incremental order book")
+@Category({"MOEX", "Order Book"})
+@Enabled(false)
+@StackTrace(false)
+final class BookUpdateEvent extends Event {
+
+    static final String ADD = "ADD";
+    static final String CANCEL = "CANCEL";
+    static final String AMEND = "AMEND";
+
+    @Label("Action")
+    String action;
+
+    @Label("Bid Id")
+    int id;
+
+    @Label("Type")
+    String type;
+
+    @Label("Amount")
+    int amount;
+
+    @Label("Price")
+    @Description("Bid price in kopecks")
+    long price;
+
+    /**
+     * @return Начатое событие или {@code null}, если событие не записывается
+     */
+    static BookUpdateEvent start() {
+        BookUpdateEvent event = new BookUpdateEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    void finish(String action, int id, Bid.BidType type, int amount, long price) {
+        end();
+        if (shouldCommit()) {
+            this.action = action;
+            this.id = id;
+            this.type = type.name();
+            this.amount = amount;
+            this.price = price;
+            commit();
+        }
+    }
+}
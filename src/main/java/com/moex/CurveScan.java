@@ -0,0 +1,241 @@
+package com.moex;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Построение кумулятивных кривых спроса и предложения и поиск на них оптимальной цены
+ * для инструментов с большим количеством ценовых уровней (мелкий шаг цены).
+ *
+ * Массив уровней делится на блоки по {@value #BLOCK_SIZE} элементов, которые обрабатываются
+ * задачами общего пула {@link ForkJoinPool}:
+ * - префиксные суммы вычисляются в два параллельных прохода: сначала суммы блоков, затем
+ *   (после последовательного вычисления смещений блоков) накопление внутри каждого блока
+ *   начиная с его смещения;
+ * - оптимальная цена ищется как максимум объема сделки min(покупка, продажа) по блокам
+ *   цен продажи: начальная цена покупки для блока находится двоичным поиском, после чего
+ *   внутри блока указатели движутся так же, как при последовательном слиянии.
+ *
+ * Параллельная обработка окупается только на больших массивах (около миллиона уровней и больше),
+ * поэтому при меньшем количестве уровней, а также на однопроцессорной машине используется
+ * последовательный проход.
+ *
+ * @author Alexey Prudnikov
+ */
+final class CurveScan {
+
+    /**
+     * Количество ценовых уровней, начиная с которого используется параллельная обработка
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+
+    static final int BLOCK_SIZE = 1 << 16;
+
+    private CurveScan() {
+    }
+
+    private static boolean parallel(int size) {
+        return size >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    /**
+     * Префиксные суммы: {@code sums[i] = values[0] + ... + values[i]}
+     *
+     * @param values Исходные значения
+     * @param sums Массив для сумм (может совпадать с {@code values})
+     * @param size Количество значений
+     */
+    static void prefixSums(long[] values, long[] sums, int size) {
+        prefixSums(values, sums, size, parallel(size));
+    }
+
+    static void prefixSums(long[] values, long[] sums, int size, boolean parallel) {
+        if (!parallel) {
+            accumulate(values, sums, 0, size, 0);
+            return;
+        }
+
+        int blocks = blocks(size);
+        long[] offsets = new long[blocks];
+        forEachBlock(blocks, block -> {
+            long sum = 0;
+            for (int i = block * BLOCK_SIZE, to = blockEnd(block, size); i < to; i++) {
+                sum += values[i];
+            }
+            offsets[block] = sum;
+        });
+
+        // смещение блока - сумма всех предыдущих блоков
+        long offset = 0;
+        for (int block = 0; block < blocks; block++) {
+            long sum = offsets[block];
+            offsets[block] = offset;
+            offset += sum;
+        }
+
+        forEachBlock(blocks, block -> accumulate(values, sums, block * BLOCK_SIZE, blockEnd(block, size), offsets[block]));
+    }
+
+    private static void accumulate(long[] values, long[] sums, int from, int to, long offset) {
+        long sum = offset;
+        for (int i = from; i < to; i++) {
+            sum += values[i];
+            sums[i] = sum;
+        }
+    }
+
+    /**
+     * Поиск оптимальной цены линейным слиянием кумулятивных объемов
+     * (см. {@link DiscreteAuction#match(PriceVolumes, PriceVolumes)})
+     *
+     * @param cumulativeSellBids Кумулятивные объемы заявок на продажу,
+     *                           отсортированные по возрастанию цены
+     * @param cumulativeBuyBids Кумулятивные объемы заявок на покупку,
+     *                          отсортированные по убыванию цены
+     *
+     * @return Результат подбора оптимальной цены
+     */
+    static DealResult match(PriceVolumes cumulativeSellBids, PriceVolumes cumulativeBuyBids) {
+        return match(cumulativeSellBids, cumulativeBuyBids, parallel(cumulativeSellBids.size()));
+    }
+
+    static DealResult match(PriceVolumes cumulativeSellBids, PriceVolumes cumulativeBuyBids, boolean parallel) {
+        int size = cumulativeSellBids.size();
+        if (!parallel) {
+            Match match = new Match();
+            match.sweep(cumulativeSellBids, cumulativeBuyBids, 0, size);
+            return match.toDeal();
+        }
+
+        int blocks = blocks(size);
+        Match[] matches = new Match[blocks];
+        forEachBlock(blocks, block -> {
+            Match match = new Match();
+            match.sweep(cumulativeSellBids, cumulativeBuyBids, block * BLOCK_SIZE, blockEnd(block, size));
+            matches[block] = match;
+        });
+
+        Match result = new Match();
+        for (Match match : matches) {
+            result.merge(match);
+        }
+        return result.toDeal();
+    }
+
+    private static int blocks(int size) {
+        return (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    private static int blockEnd(int block, int size) {
+        return (int) Math.min((long) (block + 1) * BLOCK_SIZE, size);
+    }
+
+    private static void forEachBlock(int blocks, IntConsumer action) {
+        ForkJoinPool.commonPool().invoke(new BlockAction(action, 0, blocks));
+    }
+
+    /**
+     * Задача обработки диапазона блоков: диапазон делится пополам, пока в нем не останется один блок
+     */
+    private static final class BlockAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final IntConsumer action;
+        private final int from;
+        private final int to;
+
+        private BlockAction(IntConsumer action, int from, int to) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to) {
+                    action.accept(from);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BlockAction(action, from, middle), new BlockAction(action, middle, to));
+        }
+    }
+
+    /**
+     * Наибольший объем сделки на части кривой предложения и сумма и количество
+     * оптимальных цен, при которых он достигается
+     */
+    private static final class Match {
+
+        private long bestAmount;
+        private final OptimalPrices optimalPrices = new OptimalPrices();
+
+        /**
+         * Проход по ценам продажи с индексами от {@code to - 1} до {@code from}
+         */
+        void sweep(PriceVolumes cumulativeSellBids, PriceVolumes cumulativeBuyBids, int from, int to) {
+            if (from == to) {
+                return;
+            }
+            // индекс наименьшей цены покупки, которая не меньше текущей цены продажи
+            int buy = lastBuyAtLeast(cumulativeBuyBids, cumulativeSellBids.getPrice(to - 1));
+            for (int i = to - 1; i >= from; i--) {
+                long sellPrice = cumulativeSellBids.getPrice(i);
+                while (buy + 1 < cumulativeBuyBids.size() && cumulativeBuyBids.getPrice(buy + 1) >= sellPrice) {
+                    buy++;
+                }
+                if (buy < 0) {
+                    continue;
+                }
+
+                long dealAmount = Math.min(cumulativeBuyBids.getVolume(buy), cumulativeSellBids.getVolume(i));
+                if (dealAmount >= bestAmount) {
+                    if (dealAmount > bestAmount) {
+                        optimalPrices.clear();
+                        bestAmount = dealAmount;
+                    }
+                    optimalPrices.add(sellPrice, cumulativeBuyBids.getPrice(buy));
+                }
+            }
+        }
+
+        /**
+         * Двоичный поиск по ценам покупки, отсортированным по убыванию
+         *
+         * @return Индекс последней цены покупки, не меньшей {@code price}, либо -1
+         */
+        private static int lastBuyAtLeast(PriceVolumes cumulativeBuyBids, long price) {
+            int low = 0;
+            int high = cumulativeBuyBids.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulativeBuyBids.getPrice(middle) >= price) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            return low - 1;
+        }
+
+        void merge(Match other) {
+            if (other.optimalPrices.isEmpty() || other.bestAmount < bestAmount) {
+                return;
+            }
+            if (other.bestAmount > bestAmount) {
+                optimalPrices.clear();
+                bestAmount = other.bestAmount;
+            }
+            optimalPrices.addAll(other.optimalPrices);
+        }
+
+        DealResult toDeal() {
+            return optimalPrices.toDeal(bestAmount, DealResult.DEFAULT_SCALE);
+        }
+    }
+}
@@ -1,50 +1,192 @@
 package com.moex;
 
-import java.math.BigDecimal;
-import java.util.Collections;
-import java.util.List;
-import java.util.Locale;
-
-import static com.moex.App.ONE_HUNDRED;
-import static java.math.RoundingMode.HALF_UP;
-import static java.math.RoundingMode.UP;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Описание результата вычисления оптимальной цены
  *
+ * Цена сделки - среднее арифметическое оптимальных цен, округленное вверх до минимальной единицы
+ * цены (копейки, если цены указаны с 2 знаками после запятой, см. {@link InstrumentSpec#getScale()});
+ * она вычисляется из суммы и количества оптимальных цен в целочисленной арифметике, а строка
+ * результата может формироваться в переиспользуемый буфер ({@link #writeTo(byte[], int)})
+ * без создания промежуточных объектов.
+ *
  * @author Alexey Prudnikov
  */
 public final class DealResult {
 
-    private static final String NO_DEAL = "0 n/a";
-    private static final String OUTPUT_TEMPLATE = "%d %.2f";
+    /**
+     * Максимальная длина строки результата в байтах: объем и цена в рублях (не больше 19 цифр
+     * в целой части каждого), пробел, десятичная точка и знаки после нее (вместе с целой частью
+     * цены не больше 19 цифр, так как цена в минимальных единицах помещается в long)
+     */
+    public static final int MAX_LENGTH = 19 + 1 + 19 + 3;
+
+    static final int DEFAULT_SCALE = 2;
 
-    private final BigDecimal bestPrice;
-    private final int bestAmount;
+    private static final byte[] NO_DEAL = "0 n/a".getBytes(StandardCharsets.US_ASCII);
+
+    // цена в минимальных единицах цены
+    private final long bestPrice;
+    private final long bestAmount;
+    // количество знаков после запятой в строке результата
+    private final int scale;
 
     public DealResult() {
-        this(Collections.emptyList(), 0);
+        this(0, 0, 0);
+    }
+
+    /**
+     * @param optimalPricesSum Сумма всех оптимальных цен в копейках
+     * @param optimalPricesCount Количество оптимальных цен
+     * @param bestAmount Объем сделки
+     */
+    public DealResult(long optimalPricesSum, int optimalPricesCount, long bestAmount) {
+        this(optimalPricesSum, optimalPricesCount, bestAmount, DEFAULT_SCALE);
     }
 
-    public DealResult(List<Long> optimalPrices, int bestAmount) {
-        this.bestPrice = optimalPrices.isEmpty() ?
-            BigDecimal.ZERO : calculcatePrice(optimalPrices);
+    /**
+     * @param optimalPricesSum Сумма всех оптимальных цен в минимальных единицах цены
+     * @param optimalPricesCount Количество оптимальных цен
+     * @param bestAmount Объем сделки
+     * @param scale Количество знаков после запятой в ценах
+     */
+    public DealResult(long optimalPricesSum, int optimalPricesCount, long bestAmount, int scale) {
+        this.bestPrice = optimalPricesCount == 0 ? 0 : calculcatePrice(optimalPricesSum, optimalPricesCount);
         this.bestAmount = bestAmount;
+        this.scale = scale;
     }
 
-    private BigDecimal calculcatePrice(List<Long> optimalPrices) {
-        BigDecimal optimalPricesCnt = new BigDecimal(optimalPrices.size());
-        BigDecimal optimalPricesSum = new BigDecimal(optimalPrices.stream().reduce(0L, Long::sum));
+    /**
+     * @param sumHigh Старшие 64 бита суммы всех оптимальных цен в минимальных единицах цены
+     * @param sumLow Младшие 64 бита суммы (без знака)
+     * @param optimalPricesCount Количество оптимальных цен
+     * @param bestAmount Объем сделки
+     * @param scale Количество знаков после запятой в ценах
+     */
+    DealResult(long sumHigh, long sumLow, long optimalPricesCount, long bestAmount, int scale) {
+        if (optimalPricesCount == 0) {
+            this.bestPrice = 0;
+        }
+        else if (sumHigh == 0 && sumLow >= 0) {
+            this.bestPrice = calculcatePrice(sumLow, optimalPricesCount);
+        }
+        else {
+            BigInteger[] division = BigInteger.valueOf(sumHigh).shiftLeft(Long.SIZE)
+                .add(new BigInteger(Long.toUnsignedString(sumLow)))
+                .divideAndRemainder(BigInteger.valueOf(optimalPricesCount));
+            // среднее не больше наибольшей оптимальной цены и помещается в long
+            long price = division[0].longValueExact();
+            this.bestPrice = division[1].signum() == 0 ? price : price + 1;
+        }
+        this.bestAmount = bestAmount;
+        this.scale = scale;
+    }
+
+    private DealResult(DealResult deal, int scale) {
+        this.bestPrice = deal.bestPrice;
+        this.bestAmount = deal.bestAmount;
+        this.scale = scale;
+    }
+
+    /**
+     * Тот же результат для цен с другим количеством знаков после запятой: цена в минимальных
+     * единицах не меняется, меняется только ее запись в строке результата
+     *
+     * @param scale Количество знаков после запятой в ценах
+     */
+    DealResult withScale(int scale) {
+        return scale == this.scale ? this : new DealResult(this, scale);
+    }
+
+    /**
+     * Среднее оптимальных цен, округленное вверх до минимальной единицы цены; дальнейшее
+     * округление не требуется, так как цена уже выражена в минимальных единицах
+     */
+    private static long calculcatePrice(long optimalPricesSum, long optimalPricesCount) {
+        long price = optimalPricesSum / optimalPricesCount;
+        return optimalPricesSum % optimalPricesCount == 0 ? price : price + 1;
+    }
+
+    /**
+     * @return Цена сделки в минимальных единицах цены (0, если сделки нет)
+     */
+    public long getBestPrice() {
+        return bestPrice;
+    }
+
+    /**
+     * @return Объем сделки
+     */
+    public long getBestAmount() {
+        return bestAmount;
+    }
+
+    /**
+     * Запись строки результата в буфер
+     *
+     * @param buffer Буфер, в котором после {@code offset} свободно не меньше {@link #MAX_LENGTH} байт
+     * @param offset Позиция в буфере, с которой записывается результат
+     *
+     * @return Позиция в буфере, следующая за записанным результатом
+     */
+    public int writeTo(byte[] buffer, int offset) {
+        if (bestAmount == 0) {
+            System.arraycopy(NO_DEAL, 0, buffer, offset, NO_DEAL.length);
+            return offset + NO_DEAL.length;
+        }
+
+        int position = writeNumber(buffer, offset, bestAmount);
+        buffer[position++] = ' ';
+        return writePrice(buffer, position, bestPrice, scale);
+    }
+
+    /**
+     * Запись цены в рублях с {@code scale} знаками после запятой
+     *
+     * @param price Цена в минимальных единицах 10^-scale
+     *
+     * @return Позиция в буфере, следующая за записанной ценой
+     */
+    static int writePrice(byte[] buffer, int position, long price, int scale) {
+        long unit = 1;
+        for (int i = 0; i < scale; i++) {
+            unit *= 10;
+        }
+        position = writeNumber(buffer, position, price / unit);
+        if (scale == 0) {
+            return position;
+        }
+        buffer[position++] = '.';
+        long fraction = price % unit;
+        for (int i = position + scale - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        return position + scale;
+    }
 
-        return
-            optimalPricesSum
-                .divide(optimalPricesCnt, 0, UP)
-                .divide(ONE_HUNDRED, 2, HALF_UP);
+    /**
+     * Запись неотрицательного целого числа
+     *
+     * @return Позиция в буфере, следующая за записанным числом
+     */
+    static int writeNumber(byte[] buffer, int position, long value) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + digits;
     }
 
     @Override
     public String toString() {
-        return bestAmount == 0 ?
-            NO_DEAL : String.format(Locale.US, OUTPUT_TEMPLATE, bestAmount, bestPrice);
+        byte[] buffer = new byte[MAX_LENGTH];
+        return new String(buffer, 0, writeTo(buffer, 0), StandardCharsets.US_ASCII);
     }
 }
@@ -1,81 +1,505 @@
 package com.moex;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Дискретный аукцион
  *
  * Общая идея алгоритма:
  *
- * 1. Во время чтения цены заявок конвертируются из рублей в копейки, что гарантирует точное
- *    отношение "больше-меньше" между двумя разными ценами.
+ * 1. Во время чтения цены заявок конвертируются из рублей в копейки (или иные минимальные единицы
+ *    цены в соответствии с шагом цены бумаги, {@link InstrumentSpec}), что гарантирует точное
+ *    отношение "больше-меньше" между двумя разными ценами; разбор выполняется побайтово
+ *    без создания промежуточных объектов ({@link BidParser}).
  * 2. После чтения данных вычистить заявки самых "жадных" игроков, которые гарантированно
  *    не могут быть исполнены; а однотипные заявки с одинаковыми ценами объединить
- *    {@link #cleanSellBids(java.util.List, long)} и {@link #cleanBuyBids(java.util.List, long)}).
+ *    {@link #cleanSellBids(BidColumns, long)} и {@link #cleanBuyBids(BidColumns, long)}); заявки
+ *    хранятся по столбцам в примитивных массивах ({@link BidColumns}), а сортируются
+ *    перестановкой индексов.
  * 3. Данные заявок трансформируются: для каждой цены вычисляется общий ("кумулятивный") объем ценных
- *    бумаг, которые могут быть куплены/проданы по такой цене; при этом данные о заявках на продажу для
- *    быстрого поиска по ним складываются в дерево ({@link #transformSellBids(java.util.List)} и
- *    {@link #transformBuyBids(java.util.List)})
+ *    бумаг, которые могут быть куплены/проданы по такой цене ({@link #transformSellBids(PriceVolumes)} и
+ *    {@link #transformBuyBids(PriceVolumes)}); при этом данные о заявках на покупку для
+ *    быстрого поиска по ним складываются в дерево ({@link #searchTree(PriceVolumes)})
  * 4. Осуществляется определение оптимальной цены с моиощью метода {@link #makeDeal()}, сложность
  *    алгоритма O(n * log(n))
  *
+ * Поскольку обе стороны после очистки уже упорядочены по цене, дерево поиска можно не строить:
+ * в режиме {@link Engine#SWEEP} кумулятивные объемы покупки и продажи сливаются за один
+ * линейный проход по примитивным массивам двумя указателями.
+ *
+ * Вместо описанного алгоритма ({@link Engine#TREE}) можно выбрать потоковый режим - гистограмму
+ * объемов по ценовым уровням ({@link Engine#HISTOGRAM}, {@link PriceLevelBook}): каждая разобранная
+ * заявка сразу добавляется к объему своего ценового уровня, заявки не сортируются и не хранятся,
+ * поэтому объем памяти O(L) не зависит от объема входных данных, а сложность определения
+ * оптимальной цены составляет O(n + L). Для этого способа файл с входными данными
+ * ({@link #readData(java.nio.file.Path)}) разбирается параллельно по участкам, отображенным
+ * в память ({@link ParallelFileReader}).
+ *
+ * Способ можно не задавать явно ({@link Engine#AUTO}): во время чтения собирается статистика
+ * заявок ({@link BidStatistics}) - количество, диапазон цен и оценка количества различных
+ * ценовых уровней, - по которой выбирается сортировка ({@link Engine#SWEEP}) или гистограмма
+ * ({@link Engine#HISTOGRAM}); сделанный выбор и его основание доступны через {@link #getEngineChoice()}.
+ * Выбранная гистограмма не хранит заявки, поэтому такой способ задается только явно, а по умолчанию
+ * используется {@link Engine#SWEEP}, при котором объем сделки всегда можно распределить.
+ *
+ * Помимо текстового формата, заявки можно читать из компактного двоичного файла
+ * ({@link #readBinaryData(java.nio.file.Path)}, {@link BinaryBidFormat}). Количество читаемых
+ * строк не ограничено.
+ *
+ * После определения цены объем сделки можно распределить по отдельным заявкам
+ * ({@link #allocate(FillConsumer, Allocation)}), если заявки хранятся ({@link Engine#TREE}, {@link Engine#SWEEP}).
+ *
+ * Длительность каждого этапа и счетчики заявок собираются в {@link AuctionMetrics} ({@link #getMetrics()}),
+ * а этапы и вызовы {@link #makeDeal()} записываются событиями Java Flight Recorder
+ * ({@link AuctionPhaseEvent}, {@link MakeDealEvent}).
+ *
  * @author Alexey Prudnikov
  */
 public class DiscreteAuction {
 
-    private static final int BIDS_MAX_COUNT = 1_000_000;
+    /**
+     * Способ определения оптимальной цены
+     */
+    public enum Engine {
+        /**
+         * Поразрядная сортировка заявок и поиск по дереву кумулятивных объемов, O(n * log(n))
+         */
+        TREE,
+        /**
+         * Поразрядная сортировка заявок и линейное слияние кумулятивных объемов двумя указателями,
+         * O(n) на сортировку и на поиск оптимальной цены
+         */
+        SWEEP,
+        /**
+         * Потоковая гистограмма объемов по ценовым уровням, O(n + L) по времени и O(L) по памяти
+         */
+        HISTOGRAM,
+        /**
+         * Выбор по статистике входных данных: гистограмма, если заявок не меньше
+         * {@value #AUTO_HISTOGRAM_MIN_BIDS} и в среднем на ценовой уровень приходится не меньше
+         * {@value #AUTO_HISTOGRAM_BIDS_PER_LEVEL} заявок (сортировка и хранение заявок обходятся
+         * дороже прохода по уровням), иначе - линейное слияние после сортировки, которое
+         * сохраняет заявки для распределения объема сделки. Дерево поиска автоматически
+         * не выбирается: на тех же упорядоченных данных линейное слияние не медленнее.
+         */
+        AUTO;
+
+        static final long AUTO_HISTOGRAM_MIN_BIDS = 1 << 20;
+        static final long AUTO_HISTOGRAM_BIDS_PER_LEVEL = 8;
+    }
+
+    /**
+     * Способ распределения объема сделки по заявкам ({@link #allocate(FillConsumer, Allocation)})
+     */
+    public enum Allocation {
+        /**
+         * Цена, затем время: на граничном ценовом уровне заявки исполняются в порядке поступления
+         */
+        PRICE_TIME,
+        /**
+         * Цена, затем пропорционально: объем граничного ценового уровня распределяется
+         * пропорционально количеству бумаг в заявках
+         */
+        PRO_RATA
+    }
+
+    // начало файла, по которому оценивается статистика заявок при чтении из файла ({@link Engine#AUTO})
+    static final int AUTO_SAMPLE_BYTES = 1 << 20;
 
-    private List<Bid> cumulativeSellBids;
-    private NavigableMap<Long, Integer> cumulativeBuyBids;
+    private final Engine engine;
+    private final InstrumentSpec spec;
+    private final AuctionMetrics metrics;
+
+    // способ, которым определяется цена последнего аукциона, и основание выбора
+    private Engine selectedEngine;
+    private String engineChoice;
+
+    // заявки и их порядок исполнения сохраняются для распределения исполненного объема
+    private BidColumns bids;
+    private int[] sellOrder;
+    private int[] buyOrder;
+    private PriceVolumes cumulativeSellBids;
+    private PriceVolumes cumulativeBuyBids;
+    private NavigableMap<Long, Long> buyBidsTree;
+    private PriceLevelBook priceLevelBook;
     private DealResult result;
 
+    /**
+     * Аукцион с линейным слиянием ({@link Engine#SWEEP}): заявки всегда сохраняются, поэтому
+     * объем сделки можно распределить ({@link #allocate(FillConsumer, Allocation)}) при любом объеме данных
+     */
+    public DiscreteAuction() {
+        this(Engine.SWEEP);
+    }
+
+    public DiscreteAuction(Engine engine) {
+        this(engine, InstrumentSpec.DEFAULT);
+    }
+
+    /**
+     * @param engine Способ определения оптимальной цены
+     * @param spec Шаг цены и допустимые диапазоны цены и количества
+     */
+    public DiscreteAuction(Engine engine, InstrumentSpec spec) {
+        this.engine = engine;
+        this.spec = spec;
+        this.metrics = new AuctionMetrics(engine);
+        this.selectedEngine = engine;
+        this.engineChoice = engine.name();
+    }
+
+    /**
+     * @return Показатели последнего аукциона
+     */
+    public AuctionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return Заданный способ определения цены
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return Способ определения цены последнего аукциона; при {@link Engine#AUTO} - выбранный
+     *         по статистике входных данных
+     */
+    public Engine getSelectedEngine() {
+        return selectedEngine;
+    }
+
+    /**
+     * @return Описание выбора способа определения цены, например
+     *         {@code AUTO -> HISTOGRAM (bids=2000000 levels~9901 prices=1.00..100.00)}
+     */
+    public String getEngineChoice() {
+        return engineChoice;
+    }
+
+    /**
+     * Фиксация способа определения цены для прочитанных заявок
+     *
+     * @param selected Выбранный способ
+     * @param reason Основание выбора (статистика заявок)
+     */
+    private void select(Engine selected, String reason) {
+        selectedEngine = selected;
+        engineChoice = engine + " -> " + selected + " (" + reason + ")";
+        metrics.selected(selected);
+    }
+
+    /**
+     * Выбор способа определения цены по статистике заявок (см. {@link Engine#AUTO})
+     *
+     * @param bids Количество заявок
+     * @param levels Количество различных ценовых уровней
+     */
+    static Engine selectEngine(long bids, long levels) {
+        return bids >= Engine.AUTO_HISTOGRAM_MIN_BIDS && bids >= Engine.AUTO_HISTOGRAM_BIDS_PER_LEVEL * levels ?
+            Engine.HISTOGRAM : Engine.SWEEP;
+    }
+
     /**
      * Чтение, очистка и трансформация для быстрого поиска входных данных
      *
      * @param dataSource Поток с входными данными
      */
     public void readData(InputStream dataSource) {
-        Map<Bid.BidType, List<Bid>> bids = read(dataSource);
-        if (bids.values().stream().anyMatch(List::isEmpty)) {
-            // если хоть один список пуст, сделку сформировать не получится
+        load(consumer -> new BidParser(spec).parse(dataSource, consumer));
+    }
+
+    /**
+     * Чтение, очистка и трансформация входных данных из файла; при выборе гистограммы объемов
+     * ({@link Engine#HISTOGRAM}) файл отображается в память и разбирается параллельно.
+     * При {@link Engine#AUTO} статистика оценивается по первым {@value #AUTO_SAMPLE_BYTES} байтам
+     * файла, а количество заявок - пропорционально размеру файла; если гистограмма не выбрана,
+     * файл читается потоком с окончательным выбором по статистике всех заявок.
+     *
+     * @param dataSource Путь к файлу с входными данными
+     */
+    public void readData(Path dataSource) {
+        try {
+            String sampleChoice = null;
+            if (engine == Engine.AUTO) {
+                BidStatistics sample = new BidStatistics(spec);
+                long sampleBytes = sample(dataSource, sample);
+                long estimatedBids = sampleBytes == 0 ? 0 : sample.getCount() * Files.size(dataSource) / sampleBytes;
+                if (selectEngine(estimatedBids, sample.distinctLevels()) == Engine.HISTOGRAM) {
+                    sampleChoice = "estimated bids~" + estimatedBids + " from sample " + sample;
+                }
+            }
+
+            if (engine == Engine.HISTOGRAM || sampleChoice != null) {
+                metrics.reset();
+                if (sampleChoice != null) {
+                    select(Engine.HISTOGRAM, sampleChoice);
+                }
+                AuctionPhaseEvent phase = AuctionPhaseEvent.start();
+                long start = System.nanoTime();
+                ParallelFileReader reader = new ParallelFileReader(spec);
+                priceLevelBook = reader.read(dataSource);
+                metrics.parsed(System.nanoTime() - start, reader.getLineCount(), priceLevelBook.getBidCount());
+                phase.finish(selectedEngine, "parse", reader.getLineCount(), priceLevelBook.getBidCount());
+                metrics.cleaned(0, priceLevelBook.levelCount());
+                return;
+            }
+
+            try (InputStream in = Files.newInputStream(dataSource)) {
+                readData(in);
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Сбор статистики по заявкам из начала файла (до последнего полного перевода строки
+     * в пределах {@value #AUTO_SAMPLE_BYTES} байт)
+     *
+     * @param dataSource Путь к файлу с входными данными
+     * @param statistics Получатель статистики
+     *
+     * @return Количество разобранных байт
+     */
+    private long sample(Path dataSource, BidStatistics statistics) throws IOException {
+        byte[] buffer;
+        try (InputStream in = Files.newInputStream(dataSource)) {
+            buffer = in.readNBytes(AUTO_SAMPLE_BYTES);
+        }
+        int length = buffer.length;
+        if (length == AUTO_SAMPLE_BYTES) {
+            // последняя строка может быть неполной
+            while (length > 0 && buffer[length - 1] != '\n') {
+                length--;
+            }
+        }
+        new BidParser(spec).parse(new ByteArrayInputStream(buffer, 0, length), statistics);
+        return length;
+    }
+
+    /**
+     * Чтение, очистка и трансформация входных данных из файла в двоичном формате
+     * ({@link BinaryBidFormat})
+     *
+     * @param dataSource Путь к файлу с входными данными
+     *
+     * @throws IllegalStateException Если параметры торгов аукциона отличаются от {@link InstrumentSpec#DEFAULT}:
+     *                               двоичный формат хранит цены в копейках
+     */
+    public void readBinaryData(Path dataSource) {
+        requireDefaultSpec();
+        load(consumer -> BinaryBidFormat.read(dataSource, consumer, Long.MAX_VALUE));
+    }
+
+    /**
+     * Восстановление заявок по журналу событий ({@link OrderJournal}) с последующими очисткой
+     * и трансформацией: учитываются заявки, поступившие после последнего проведенного аукциона,
+     * с учетом их снятия и изменения; индекс заявки при распределении объема сделки
+     * ({@link #allocate(FillConsumer, Allocation)}) совпадает с ее идентификатором в журнале
+     *
+     * @param journal Путь к файлу журнала
+     *
+     * @throws IllegalStateException Если параметры торгов аукциона отличаются от {@link InstrumentSpec#DEFAULT}:
+     *                               журнал хранит цены в копейках
+     */
+    public void readJournal(Path journal) {
+        requireDefaultSpec();
+        metrics.reset();
+        AuctionPhaseEvent phase = AuctionPhaseEvent.start();
+        long start = System.nanoTime();
+        BidColumns bids;
+        try {
+            bids = OrderJournal.recoverBids(journal);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        metrics.parsed(System.nanoTime() - start, bids.size(), bids.size());
+
+        if (engine == Engine.AUTO) {
+            BidStatistics statistics = new BidStatistics(spec);
+            for (int i = 0; i < bids.size(); i++) {
+                if (bids.getAmount(i) > 0) {
+                    statistics.accept(bids.getType(i), bids.getAmount(i), bids.getPrice(i));
+                }
+            }
+            select(selectEngine(statistics.getCount(), statistics.distinctLevels()), statistics.toString());
+        }
+        phase.finish(selectedEngine, "parse", bids.size(), bids.size());
+
+        if (selectedEngine == Engine.HISTOGRAM) {
+            priceLevelBook = new PriceLevelBook();
+            for (int i = 0; i < bids.size(); i++) {
+                if (bids.getAmount(i) > 0) {
+                    priceLevelBook.accept(bids.getType(i), bids.getAmount(i), bids.getPrice(i));
+                }
+            }
+            metrics.cleaned(0, priceLevelBook.levelCount());
+            return;
+        }
+        load(bids);
+    }
+
+    private void requireDefaultSpec() {
+        if (!spec.equals(InstrumentSpec.DEFAULT)) {
+            throw new IllegalStateException("Only kopeck prices are supported by this source, got spec " + spec);
+        }
+    }
+
+    /**
+     * Чтение заявок из источника в соответствии с выбранным способом определения оптимальной цены
+     *
+     * @param source Источник заявок
+     */
+    private void load(BidSource source) {
+        metrics.reset();
+        AuctionPhaseEvent phase = AuctionPhaseEvent.start();
+        long start = System.nanoTime();
+        BidColumns bids = null;
+        long lines;
+        if (engine == Engine.AUTO) {
+            AdaptiveConsumer consumer = new AdaptiveConsumer();
+            lines = read(source, consumer);
+            Engine selected = consumer.book != null ? Engine.HISTOGRAM :
+                selectEngine(consumer.statistics.getCount(), consumer.statistics.distinctLevels());
+            if (selected == Engine.HISTOGRAM && consumer.book == null) {
+                consumer.switchToHistogram();
+            }
+            select(selected, consumer.statistics.toString());
+            priceLevelBook = consumer.book;
+            bids = consumer.bids;
+        }
+        else if (engine == Engine.HISTOGRAM) {
+            priceLevelBook = new PriceLevelBook(spec);
+            lines = read(source, priceLevelBook);
+        }
+        else {
+            bids = new BidColumns();
+            lines = read(source, bids);
+        }
+
+        if (selectedEngine == Engine.HISTOGRAM) {
+            metrics.parsed(System.nanoTime() - start, lines, priceLevelBook.getBidCount());
+            metrics.cleaned(0, priceLevelBook.levelCount());
+            phase.finish(selectedEngine, "parse", lines, priceLevelBook.getBidCount());
+            return;
+        }
+
+        metrics.parsed(System.nanoTime() - start, lines, bids.size());
+        phase.finish(selectedEngine, "parse", lines, bids.size());
+        load(bids);
+    }
+
+    /**
+     * Очистка и трансформация прочитанных заявок; заявки с нулевым количеством (снятые) не учитываются
+     *
+     * @param bids Заявки обоих типов
+     */
+    void load(BidColumns bids) {
+        long minSellPrice = Long.MAX_VALUE;
+        long maxBuyPrice = Long.MIN_VALUE;
+        int activeBids = 0;
+        for (int i = 0; i < bids.size(); i++) {
+            if (bids.getAmount(i) == 0) {
+                continue;
+            }
+            activeBids++;
+            if (bids.getType(i) == Bid.BidType.S) {
+                minSellPrice = Math.min(minSellPrice, bids.getPrice(i));
+            }
+            else {
+                maxBuyPrice = Math.max(maxBuyPrice, bids.getPrice(i));
+            }
+        }
+        if (minSellPrice == Long.MAX_VALUE || maxBuyPrice == Long.MIN_VALUE) {
+            // если заявок одного из типов нет, сделку сформировать не получится
+            metrics.sorted(0, activeBids);
             result = new DealResult();
+            metrics.matched(0);
             return;
         }
 
-        List<Bid> sellBids = bids.get(Bid.BidType.S);
-        List<Bid> buyBids = bids.get(Bid.BidType.B);
-        cumulativeSellBids = transformSellBids(
-            cleanSellBids(sellBids, buyBids.get(buyBids.size() - 1).getPrice())
-        );
-        cumulativeBuyBids = transformBuyBids(
-            cleanBuyBids(buyBids, sellBids.get(0).getPrice())
-        );
+        this.bids = bids;
+        AuctionPhaseEvent phase = AuctionPhaseEvent.start();
+        long start = System.nanoTime();
+        sellOrder = priorityOrder(bids, Bid.BidType.S, maxBuyPrice);
+        buyOrder = priorityOrder(bids, Bid.BidType.B, minSellPrice);
+        long sorted = System.nanoTime();
+        metrics.sorted(sorted - start, activeBids - sellOrder.length - buyOrder.length);
+        phase.finish(selectedEngine, "sort", activeBids, sellOrder.length + buyOrder.length);
+
+        phase = AuctionPhaseEvent.start();
+        PriceVolumes sellBids = aggregate(bids, sellOrder);
+        PriceVolumes buyBids = aggregate(bids, buyOrder);
+        long cleaned = System.nanoTime();
+        int levels = sellBids.size() + buyBids.size();
+        metrics.cleaned(cleaned - sorted, levels);
+        phase.finish(selectedEngine, "clean", sellOrder.length + buyOrder.length, levels);
+
+        phase = AuctionPhaseEvent.start();
+        cumulativeSellBids = transformSellBids(sellBids);
+        cumulativeBuyBids = transformBuyBids(buyBids);
+        long transformed = System.nanoTime();
+        metrics.transformed(transformed - cleaned);
+        phase.finish(selectedEngine, "transform", levels, levels);
+
+        if (selectedEngine == Engine.TREE) {
+            phase = AuctionPhaseEvent.start();
+            buyBidsTree = searchTree(cumulativeBuyBids);
+            metrics.indexed(System.nanoTime() - transformed);
+            phase.finish(selectedEngine, "index", cumulativeBuyBids.size(), buyBidsTree.size());
+        }
     }
 
     /**
-     * Начитка данных из входящего потока; пустые и не
+     * Начитка данных из входящего потока с помощью {@link BidParser}; пустые и не
      * соответствующие формату строки отбрасываются
      *
      * @param dataSource Поток с входными данными
      *
-     * @return Два списка заявок (на продажу и на покупку),
-     *         отсортированные по возрастанию цены
+     * @return Заявки обоих типов в порядке поступления
      */
-    private Map<Bid.BidType, List<Bid>> read(InputStream dataSource) {
-        BufferedReader in = new BufferedReader(new InputStreamReader(dataSource));
-        return
-            in.lines()
-              .limit(BIDS_MAX_COUNT)
-              .map(new ParseBidFunction())
-              .filter(Objects::nonNull)
-              .sorted()
-              .collect(
-                  Collectors.groupingBy(Bid::getType)
-              );
+    BidColumns read(InputStream dataSource) {
+        return read(consumer -> new BidParser(spec).parse(dataSource, consumer));
+    }
+
+    /**
+     * Начитка заявок из источника
+     *
+     * @param source Источник заявок
+     *
+     * @return Заявки обоих типов в порядке поступления
+     */
+    private BidColumns read(BidSource source) {
+        BidColumns bids = new BidColumns();
+        read(source, bids);
+        return bids;
+    }
+
+    /**
+     * Передача заявок из источника получателю
+     *
+     * @param source Источник заявок
+     * @param consumer Получатель заявок
+     *
+     * @return Количество прочитанных строк (записей), включая отброшенные
+     */
+    private static long read(BidSource source, BidConsumer consumer) {
+        try {
+            return source.readTo(consumer);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
     }
 
     /**
@@ -84,14 +508,13 @@ public class DiscreteAuction {
      * (с ценой продажи больше самой высокой цены покупки);
      * - заявки с одинаковыми суммами продажи объединяются между собой
      *
-     * @param sellBids Список заявок на продажу
+     * @param bids Заявки обоих типов
      * @param maxPrice Самая высокая цена покупки
      *
-     * @return Очищенный от лишних данных и отсортированный по возрастанию цены
-     *         список заявок на продажу
+     * @return Объемы заявок на продажу по ценам, отсортированные по возрастанию цены
      */
-    private List<Bid> cleanSellBids(List<Bid> sellBids, long maxPrice) {
-        return cleanBids(sellBids, Bid.BidType.S, maxPrice);
+    PriceVolumes cleanSellBids(BidColumns bids, long maxPrice) {
+        return cleanBids(bids, Bid.BidType.S, maxPrice);
     }
 
     /**
@@ -100,93 +523,151 @@ public class DiscreteAuction {
      * (с ценой покупки меньше самой низкой цены продажи);
      * - заявки с одинаковыми суммами покупки объединяются между собой
      *
-     * @param buyBids Список заявок на покупку
+     * @param bids Заявки обоих типов
      * @param minPrice Самая низкая цена продажи
      *
-     * @return Очищенный от лишних данных и отсортированный по убыванию цены
-     *         список заявок на покупку
+     * @return Объемы заявок на покупку по ценам, отсортированные по убыванию цены
      */
-    private List<Bid> cleanBuyBids(List<Bid> buyBids, long minPrice) {
-        return cleanBids(buyBids, Bid.BidType.B, minPrice);
+    PriceVolumes cleanBuyBids(BidColumns bids, long minPrice) {
+        return cleanBids(bids, Bid.BidType.B, minPrice);
     }
 
     /**
      * Очистка исходных данных по заявкам:
+     * - отбираются заявки указанного типа;
      * - удаляются заявки, которые никогда не будут выполнены;
-     * - заявки с одинаковыми суммами покупки объединяются между собой;
-     * - заявки на продажу сортируются по возрастанию цены, на покупку - по убыванию цены
+     * - заявки с одинаковыми суммами объединяются между собой;
+     * - цены продажи упорядочиваются по возрастанию, цены покупки - по убыванию
      *
-     * @param bids Список заявок, которые нужно очистить
-     * @param bidType Тип заявок в списке {@code bids}
+     * @param bids Заявки обоих типов
+     * @param bidType Тип заявок, которые нужно очистить
      * @param thresholdPrice Максимальная (минимальная) цена, выше (ниже) которой
      *                       заявка не может быть исполнена
      *
-     * @return Очищенный от лишних данных и отсортированный в определенном порядке список заявок
+     * @return Очищенные от лишних данных и отсортированные в определенном порядке
+     *         объемы заявок по ценам
      */
-    private List<Bid> cleanBids(List<Bid> bids, Bid.BidType bidType, long thresholdPrice) {
-        return
-            bids
-                .stream()
-                .filter(new FeasibleBidPredicate(bidType, thresholdPrice))
-                .collect(
-                    Collectors.groupingBy(
-                        Bid::getPrice,
-                        Collectors.summingInt(Bid::getAmount)
-                    )
-                )
-                .entrySet()
-                    .stream()
-                    .map(e -> new Bid(bidType, e.getValue(), e.getKey()))
-                    .sorted(bidType == Bid.BidType.S ? Comparator.naturalOrder() : Comparator.reverseOrder())
-                    .collect(Collectors.toList());
+    PriceVolumes cleanBids(BidColumns bids, Bid.BidType bidType, long thresholdPrice) {
+        return aggregate(bids, priorityOrder(bids, bidType, thresholdPrice));
     }
 
     /**
-     * Трансформация заявок на продажу: на выходе каждая заявка будет содержаь общее
-     * (кумулятивное) количество ценных бумаг, которые могут быть проданы за указанную
-     * в заявке сумму
-
-     * @param sellBids Очищенный от лишних данных и отсортированный по возрастанию цены
-     *                 список заявок на продажу
+     * Отбор выполнимых заявок указанного типа и их упорядочивание по приоритету исполнения:
+     * заявки на продажу - по возрастанию цены, на покупку - по убыванию цены, заявки
+     * с одинаковой ценой - в порядке поступления.
+     *
+     * Заявки не копируются: сортируется перестановка их индексов по расстоянию цены в ценовых
+     * уровнях от наилучшей цены стороны. Диапазон цен ограничен сеткой цен ({@link InstrumentSpec}),
+     * поэтому вместо сортировки сравнениями используется устойчивая поразрядная сортировка
+     * ({@link RadixSort}): для цен в копейках это один проход подсчетом, то есть O(n),
+     * а порядок поступления заявок с одинаковой ценой сохраняется.
      *
-     * @return Список заявок на продажу, содержащий кумулятивные значения количества ценных
-     *         бумаг, и отсортированный по возрастанию цены
+     * @param bids Заявки обоих типов
+     * @param bidType Тип заявок, которые нужно упорядочить
+     * @param thresholdPrice Максимальная (минимальная) цена, выше (ниже) которой
+     *                       заявка не может быть исполнена
+     *
+     * @return Индексы выполнимых заявок в порядке приоритета исполнения
      */
-    private List<Bid> transformSellBids(List<Bid> sellBids) {
-        if (sellBids.isEmpty()) {
-            return Collections.emptyList();
+    int[] priorityOrder(BidColumns bids, Bid.BidType bidType, long thresholdPrice) {
+        FeasibleBidPredicate feasible = new FeasibleBidPredicate(bidType, thresholdPrice);
+        int[] order = new int[bids.size()];
+        long[] keys = new long[bids.size()];
+        int count = 0;
+        long minLevel = Long.MAX_VALUE;
+        long maxLevel = Long.MIN_VALUE;
+        for (int i = 0; i < bids.size(); i++) {
+            if (bids.getType(i) == bidType && bids.getAmount(i) > 0 && feasible.test(bids.getPrice(i))) {
+                long level = spec.level(bids.getPrice(i));
+                minLevel = Math.min(minLevel, level);
+                maxLevel = Math.max(maxLevel, level);
+                order[count] = i;
+                keys[count++] = level;
+            }
         }
-        List<Bid> result = new ArrayList<>(sellBids.size());
-        int cumulativeAmount = 0;
-        for (Bid b : sellBids) {
-            cumulativeAmount += b.getAmount();
-            result.add(new Bid(b.getType(), cumulativeAmount, b.getPrice()));
+        if (count == 0) {
+            return new int[0];
         }
 
+        // продажи упорядочиваются по возрастанию цены, покупки - по убыванию
+        boolean ascending = bidType == Bid.BidType.S;
+        for (int i = 0; i < count; i++) {
+            keys[i] = ascending ? keys[i] - minLevel : maxLevel - keys[i];
+        }
+        RadixSort.sort(order, keys, count, maxLevel - minLevel);
+        return count == order.length ? order : Arrays.copyOf(order, count);
+    }
+
+    /**
+     * Объединение упорядоченных по цене заявок с одинаковыми суммами; массивы результата
+     * рассчитаны на количество ценовых уровней между первой и последней ценой, а не на количество
+     * заявок, которых на одном уровне может быть много
+     *
+     * @param bids Заявки обоих типов
+     * @param order Индексы заявок одного типа, упорядоченные по цене
+     *
+     * @return Объемы заявок по ценам в том же порядке
+     */
+    PriceVolumes aggregate(BidColumns bids, int[] order) {
+        int levels = order.length == 0 ? 0 : (int) Math.min(order.length,
+            Math.abs(spec.level(bids.getPrice(order[order.length - 1])) - spec.level(bids.getPrice(order[0]))) + 1);
+        PriceVolumes result = new PriceVolumes(levels);
+        long price = 0;
+        long volume = 0;
+        for (int index : order) {
+            if (bids.getPrice(index) != price) {
+                if (volume > 0) {
+                    result.add(price, volume);
+                }
+                price = bids.getPrice(index);
+                volume = 0;
+            }
+            volume += bids.getAmount(index);
+        }
+        if (volume > 0) {
+            result.add(price, volume);
+        }
         return result;
     }
 
     /**
-     * Трансформация заявок на покупку: на выходе каждая заявка будет содержаь общее
-     * (кумулятивное) количество ценных бумаг, которые могут быть куплены за указанную
-     * в заявке сумму; при этом для быстрого поиска заявки будут складываться в {@link TreeMap}:
-     * ключ - сумма заявки, значение - общее количество заявок на эту сумму
+     * Трансформация заявок на продажу: на выходе для каждой цены будет указано общее
+     * (кумулятивное) количество ценных бумаг, которые могут быть проданы за эту сумму
 
-     * @param buyBids Очищенный от лишних данных и отсортированный по убыванию цены
-     *                список заявок на покупку
+     * @param sellBids Очищенные от лишних данных и отсортированные по возрастанию цены
+     *                 объемы заявок на продажу
      *
-     * @return Дерево поиска для "кумулятивных" заявок на покупку
+     * @return Кумулятивные объемы заявок на продажу, отсортированные по возрастанию цены
      */
-    private NavigableMap<Long, Integer> transformBuyBids(List<Bid> buyBids) {
-        if (buyBids.isEmpty()) {
-            return Collections.emptyNavigableMap();
-        }
+    PriceVolumes transformSellBids(PriceVolumes sellBids) {
+        return sellBids.cumulative();
+    }
+
+    /**
+     * Трансформация заявок на покупку: на выходе для каждой цены будет указано общее
+     * (кумулятивное) количество ценных бумаг, которые могут быть куплены за эту сумму
+
+     * @param buyBids Очищенные от лишних данных и отсортированные по убыванию цены
+     *                объемы заявок на покупку
+     *
+     * @return Кумулятивные объемы заявок на покупку, отсортированные по убыванию цены
+     */
+    PriceVolumes transformBuyBids(PriceVolumes buyBids) {
+        return buyBids.cumulative();
+    }
 
-        NavigableMap<Long, Integer> result = new TreeMap<>();
-        int amount = 0;
-        for (Bid b : buyBids) {
-            amount += b.getAmount();
-            result.put(b.getPrice(), amount);
+    /**
+     * Построение дерева поиска по кумулятивным объемам заявок на покупку ({@link Engine#TREE}):
+     * ключ - сумма заявки, значение - общее количество бумаг, которые могут быть куплены за эту сумму
+     *
+     * @param cumulativeBuyBids Кумулятивные объемы заявок на покупку
+     *
+     * @return Дерево поиска для "кумулятивных" заявок на покупку
+     */
+    static NavigableMap<Long, Long> searchTree(PriceVolumes cumulativeBuyBids) {
+        NavigableMap<Long, Long> result = new TreeMap<>();
+        for (int i = 0; i < cumulativeBuyBids.size(); i++) {
+            result.put(cumulativeBuyBids.getPrice(i), cumulativeBuyBids.getVolume(i));
         }
 
         return result;
@@ -195,48 +676,201 @@ public class DiscreteAuction {
     /**
      * Определение оптимальной цены: осуществляется проход по всем заявкам на продажу от
      * наибольшей цены к наименьшей, и для каждой цены продажи ищется наиболее оптимальная
-     * цена покупки с помощью дерева поиска; если такое соответствие находится, то вычисляется объем сделки.
+     * цена покупки; если такое соответствие находится, то вычисляется объем сделки.
      *
-     * Таким образом, общая сложность этого алгоритма O(n * log(n)): проход по массиву
-     * выполняется за O(n), на каждой итерации выполняется поиск в дереве за O(log(n)).
+     * В режиме {@link Engine#TREE} цена покупки ищется в дереве поиска, поэтому общая сложность
+     * алгоритма O(n * log(n)): проход по массиву выполняется за O(n), на каждой итерации
+     * выполняется поиск в дереве за O(log(n)). В режиме {@link Engine#SWEEP} цена покупки
+     * находится вторым указателем, который монотонно движется по массиву цен покупки, и вся
+     * процедура выполняется за O(n).
      *
      * @return Результат подбора оптимальной цены в виде экземпляра объекта {@link DealResult}
      */
     public DealResult makeDeal() {
+        MakeDealEvent event = MakeDealEvent.start();
         if (result != null) {
+            event.finish(selectedEngine.name(), metrics.getPriceLevels(), true, result);
             return result;
         }
 
+        long start = System.nanoTime();
+        if (priceLevelBook != null) {
+            result = priceLevelBook.match();
+        }
+        else {
+            result = (buyBidsTree != null ?
+                match(cumulativeSellBids, buyBidsTree) : match(cumulativeSellBids, cumulativeBuyBids))
+                .withScale(spec.getScale());
+        }
+        metrics.matched(System.nanoTime() - start);
+        event.finish(selectedEngine.name(), metrics.getPriceLevels(), false, result);
+        return result;
+    }
+
+    /**
+     * Распределение объема сделки по отдельным заявкам по принципу "цена, затем время"
+     * (см. {@link #allocate(FillConsumer, Allocation)})
+     *
+     * @param consumer Получатель исполнений
+     *
+     * @throws UnsupportedOperationException Если заявки не хранятся ({@link Engine#HISTOGRAM})
+     * @throws IllegalStateException Если при {@link Engine#AUTO} по статистике входных данных выбрана гистограмма
+     */
+    public void allocate(FillConsumer consumer) {
+        allocate(consumer, Allocation.PRICE_TIME);
+    }
+
+    /**
+     * Распределение объема сделки по отдельным заявкам:
+     * заявки исполняются в порядке приоритета (лучшая цена, при равной цене - более ранняя заявка),
+     * пока не будет набран объем сделки; последняя исполняемая заявка каждой стороны может быть
+     * исполнена частично ({@link Allocation#PRICE_TIME}). Вместо этого объем граничного ценового
+     * уровня можно распределить между его заявками пропорционально ({@link Allocation#PRO_RATA}).
+     * Все заявки исполняются по цене сделки.
+     *
+     * Порядок исполнения уже известен после сортировки заявок, поэтому распределение выполняется
+     * за один проход по исполняемым заявкам; исполнения не накапливаются в памяти, а сразу
+     * передаются получателю (например, {@link ExecutionReportWriter}): сначала по заявкам на покупку,
+     * затем по заявкам на продажу.
+     *
+     * @param consumer Получатель исполнений
+     * @param allocation Способ распределения объема на граничном ценовом уровне
+     *
+     * @throws UnsupportedOperationException Если заявки не хранятся ({@link Engine#HISTOGRAM})
+     * @throws IllegalStateException Если при {@link Engine#AUTO} по статистике входных данных выбрана гистограмма:
+     *                               для распределения объема способ нужно задать явно ({@link Engine#SWEEP})
+     */
+    public void allocate(FillConsumer consumer, Allocation allocation) {
+        if (engine == Engine.HISTOGRAM) {
+            throw new UnsupportedOperationException("Individual bids are not kept by the " + engine + " engine");
+        }
+        if (selectedEngine == Engine.HISTOGRAM) {
+            throw new IllegalStateException("Individual bids were not kept: " + engineChoice
+                + "; use the " + Engine.SWEEP + " engine to allocate fills");
+        }
+
+        DealResult deal = makeDeal();
+        if (deal.getBestAmount() == 0) {
+            return;
+        }
+        if (allocation == Allocation.PRO_RATA) {
+            FillAllocator.allocateProRata(bids, buyOrder, deal.getBestAmount(), deal.getBestPrice(), consumer);
+            FillAllocator.allocateProRata(bids, sellOrder, deal.getBestAmount(), deal.getBestPrice(), consumer);
+        }
+        else {
+            FillAllocator.allocate(bids, buyOrder, deal.getBestAmount(), deal.getBestPrice(), consumer);
+            FillAllocator.allocate(bids, sellOrder, deal.getBestAmount(), deal.getBestPrice(), consumer);
+        }
+    }
+
+    /**
+     * Поиск оптимальной цены по трансформированным данным заявок с помощью дерева поиска
+     * (см. {@link #makeDeal()})
+     *
+     * @param cumulativeSellBids Кумулятивные объемы заявок на продажу,
+     *                           отсортированные по возрастанию цены
+     * @param cumulativeBuyBids Дерево поиска для "кумулятивных" заявок на покупку
+     *
+     * @return Результат подбора оптимальной цены
+     */
+    static DealResult match(PriceVolumes cumulativeSellBids, NavigableMap<Long, Long> cumulativeBuyBids) {
         if (cumulativeSellBids.isEmpty() || cumulativeBuyBids.isEmpty()) {
             // если в результате чисток и трансформаций данных не осталось, то сразу выходим
-            result = new DealResult();
-            return result;
+            return new DealResult();
         }
 
-        int bestAmount = 0;
-        List<Long> optimalPrices = new ArrayList<>();
+        long bestAmount = 0;
+        // оптимальные цены не сохраняются в список: для расчета цены достаточно их суммы и количества
+        OptimalPrices optimalPrices = new OptimalPrices();
 
         // проход в обратном порядке (от наибольшей цены к наименьшей), чтобы не тратить ресурсы на сортировку
         for (int i = cumulativeSellBids.size() - 1; i >= 0; i--) {
-            Bid sellBid = cumulativeSellBids.get(i);
-            Map.Entry<Long, Integer> matchedBuy = cumulativeBuyBids.ceilingEntry(sellBid.getPrice());
+            long sellPrice = cumulativeSellBids.getPrice(i);
+            Map.Entry<Long, Long> matchedBuy = cumulativeBuyBids.ceilingEntry(sellPrice);
             if (matchedBuy == null) {
                 continue;
             }
 
-            int dealAmount = Math.min(matchedBuy.getValue(), sellBid.getAmount());
+            long dealAmount = Math.min(matchedBuy.getValue(), cumulativeSellBids.getVolume(i));
             if (dealAmount >= bestAmount) {
                 if (dealAmount > bestAmount) {
                     optimalPrices.clear();
                     bestAmount = dealAmount;
                 }
-                optimalPrices.add(sellBid.getPrice());
-                optimalPrices.add(matchedBuy.getKey());
+                optimalPrices.add(sellPrice, matchedBuy.getKey());
             }
         }
 
-        result = new DealResult(optimalPrices, bestAmount);
-        return result;
+        return optimalPrices.toDeal(bestAmount, DealResult.DEFAULT_SCALE);
+    }
+
+    /**
+     * Поиск оптимальной цены линейным слиянием кумулятивных объемов (см. {@link #makeDeal()}):
+     * при движении по ценам продажи вниз ближайшая не меньшая цена покупки также только
+     * убывает, поэтому указатель по ценам покупки движется в одну сторону; при большом количестве
+     * уровней цены продажи делятся на блоки, которые обрабатываются параллельно ({@link CurveScan})
+     *
+     * @param cumulativeSellBids Кумулятивные объемы заявок на продажу,
+     *                           отсортированные по возрастанию цены
+     * @param cumulativeBuyBids Кумулятивные объемы заявок на покупку,
+     *                          отсортированные по убыванию цены
+     *
+     * @return Результат подбора оптимальной цены
+     */
+    static DealResult match(PriceVolumes cumulativeSellBids, PriceVolumes cumulativeBuyBids) {
+        return CurveScan.match(cumulativeSellBids, cumulativeBuyBids);
+    }
+
+    /**
+     * Получатель заявок при {@link Engine#AUTO}: заявки сохраняются для сортировки, пока статистика
+     * не покажет, что выгоднее гистограмма; проверка выполняется при каждом удвоении количества
+     * заявок начиная с {@link Engine#AUTO_HISTOGRAM_MIN_BIDS}, после переключения сохраненные заявки
+     * переносятся в гистограмму, а следующие добавляются сразу в нее
+     */
+    private final class AdaptiveConsumer implements BidConsumer {
+
+        private final BidStatistics statistics = new BidStatistics(spec);
+        private BidColumns bids = new BidColumns();
+        private PriceLevelBook book;
+        private long nextCheck = Engine.AUTO_HISTOGRAM_MIN_BIDS;
+
+        @Override
+        public void accept(Bid.BidType type, int amount, long price) {
+            statistics.accept(type, amount, price);
+            if (book != null) {
+                book.accept(type, amount, price);
+                return;
+            }
+            bids.accept(type, amount, price);
+            if (bids.size() == nextCheck) {
+                if (selectEngine(statistics.getCount(), statistics.distinctLevels()) == Engine.HISTOGRAM) {
+                    switchToHistogram();
+                }
+                else {
+                    nextCheck *= 2;
+                }
+            }
+        }
+
+        void switchToHistogram() {
+            book = new PriceLevelBook(spec);
+            for (int i = 0; i < bids.size(); i++) {
+                book.accept(bids.getType(i), bids.getAmount(i), bids.getPrice(i));
+            }
+            bids = null;
+        }
+    }
+
+    /**
+     * Источник заявок: входящий поток, текстовый или двоичный файл
+     */
+    @FunctionalInterface
+    private interface BidSource {
+
+        /**
+         * @return Количество прочитанных строк (записей)
+         */
+        long readTo(BidConsumer consumer) throws IOException;
     }
 
 }
@@ -0,0 +1,94 @@
+package com.moex;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Запись отчета об исполнении заявок в канал: по одной строке на исполнение в формате
+ * {@code <индекс заявки> <тип> <количество> <цена>}, например {@code 17 B 100 15.30}.
+ *
+ * Строки формируются в переиспользуемом буфере и записываются в канал по мере его заполнения,
+ * поэтому объем памяти не зависит от количества исполнений. Экземпляр не потокобезопасен.
+ *
+ * @author Alexey Prudnikov
+ */
+public final class ExecutionReportWriter implements FillConsumer, Flushable, Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // индекс, тип, количество, цена, разделители и перевод строки
+    private static final int MAX_LINE_LENGTH = 10 + 1 + 1 + 1 + 10 + 1 + DealResult.MAX_LENGTH + 1;
+
+    private final WritableByteChannel channel;
+    // количество знаков после запятой в ценах
+    private final int scale;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private long fills;
+
+    /**
+     * @param channel Канал для записи отчета (закрывается вместе с экземпляром)
+     */
+    public ExecutionReportWriter(WritableByteChannel channel) {
+        this(channel, InstrumentSpec.DEFAULT.getScale());
+    }
+
+    /**
+     * @param channel Канал для записи отчета (закрывается вместе с экземпляром)
+     * @param scale Количество знаков после запятой в ценах ({@link InstrumentSpec#getScale()})
+     */
+    public ExecutionReportWriter(WritableByteChannel channel, int scale) {
+        this.channel = channel;
+        this.scale = scale;
+    }
+
+    @Override
+    public void accept(int bid, Bid.BidType type, int amount, long price) {
+        if (buffer.length - position < MAX_LINE_LENGTH) {
+            try {
+                flush();
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        position = DealResult.writeNumber(buffer, position, bid);
+        buffer[position++] = ' ';
+        buffer[position++] = (byte) (type == Bid.BidType.B ? 'B' : 'S');
+        buffer[position++] = ' ';
+        position = DealResult.writeNumber(buffer, position, amount);
+        buffer[position++] = ' ';
+        position = DealResult.writePrice(buffer, position, price, scale);
+        buffer[position++] = '\n';
+        fills++;
+    }
+
+    /**
+     * @return Количество записанных исполнений
+     */
+    public long getFillCount() {
+        return fills;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(buffer, 0, position);
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            channel.close();
+        }
+    }
+}
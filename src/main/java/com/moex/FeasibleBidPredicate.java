@@ -7,6 +7,8 @@ import java.util.function.Predicate;
  * - у которых цена продажи не больше максимальной цены покупки;
  * - у которых цена покупки не меньше минимальной цены продажи
  *
+ * Проверять можно как заявку целиком, так и только ее цену (для заявок в {@link BidColumns}).
+ *
  * @author Alexey Prudnikov
  */
 public final class FeasibleBidPredicate implements Predicate<Bid> {
@@ -21,9 +23,18 @@ public final class FeasibleBidPredicate implements Predicate<Bid> {
 
     @Override
     public boolean test(Bid bid) {
+        return test(bid.getPrice());
+    }
+
+    /**
+     * @param price Цена заявки в минимальных единицах цены (см. {@link InstrumentSpec#getScale()})
+     *
+     * @return {@code true}, если заявка с такой ценой может быть исполнена
+     */
+    public boolean test(long price) {
         if (bidType == Bid.BidType.S) {
-            return bid.getPrice() <= thresholdPrice;
+            return price <= thresholdPrice;
         }
-        return bid.getPrice() >= thresholdPrice;
+        return price >= thresholdPrice;
     }
 }
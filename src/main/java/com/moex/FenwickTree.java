@@ -0,0 +1,113 @@
+package com.moex;
+
+import java.util.Arrays;
+
+/**
+ * Дерево Фенвика над массивом неотрицательных значений: изменение элемента,
+ * сумма на префиксе и поиск префикса с заданной суммой выполняются за O(log(n))
+ *
+ * @author Alexey Prudnikov
+ */
+final class FenwickTree {
+
+    private final long[] tree;
+    private final int size;
+    private final int highestStep;
+
+    FenwickTree(int size) {
+        this.tree = new long[size + 1];
+        this.size = size;
+        this.highestStep = Integer.highestOneBit(size);
+    }
+
+    /**
+     * Построение дерева по значениям элементов за O(n)
+     *
+     * @param values Значения элементов
+     */
+    FenwickTree(long[] values) {
+        this(values.length);
+        System.arraycopy(values, 0, tree, 1, size);
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    /**
+     * Значения всех элементов за O(n): построение дерева, выполненное в обратном порядке
+     *
+     * @return Новый массив значений элементов
+     */
+    long[] toArray() {
+        long[] values = Arrays.copyOfRange(tree, 1, size + 1);
+        for (int i = size; i > 0; i--) {
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                values[parent - 1] -= values[i - 1];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Изменение значения элемента
+     *
+     * @param index Индекс элемента (с нуля)
+     * @param delta Величина изменения
+     */
+    void add(int index, long delta) {
+        for (int i = index + 1; i <= size; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @param index Индекс последнего элемента префикса (с нуля); для {@code -1} префикс пуст
+     *
+     * @return Сумма элементов с индексами от 0 до {@code index} включительно
+     */
+    long prefixSum(int index) {
+        long sum = 0;
+        for (int i = index + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return Сумма элементов с индексами от {@code from} до {@code to} включительно
+     */
+    long rangeSum(int from, int to) {
+        return prefixSum(to) - prefixSum(from - 1);
+    }
+
+    /**
+     * @return Сумма всех элементов
+     */
+    long sum() {
+        return prefixSum(size - 1);
+    }
+
+    /**
+     * Поиск наименьшего индекса, сумма на префиксе до которого не меньше заданной
+     *
+     * @param target Искомая сумма
+     *
+     * @return Индекс элемента (с нуля) или количество элементов, если такого префикса нет
+     */
+    int lowerBound(long target) {
+        int position = 0;
+        long remainder = target;
+        for (int step = highestStep; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= size && tree[next] < remainder) {
+                position = next;
+                remainder -= tree[next];
+            }
+        }
+        return position;
+    }
+}
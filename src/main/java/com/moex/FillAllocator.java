@@ -0,0 +1,177 @@
+package com.moex;
+
+import java.math.BigInteger;
+
+/**
+ * Распределение объема сделки по заявкам одной стороны
+ *
+ * @author Alexey Prudnikov
+ */
+final class FillAllocator {
+
+    private FillAllocator() {
+    }
+
+    /**
+     * Распределение по принципу "цена, затем время": заявки исполняются полностью в порядке
+     * приоритета, пока не будет набран объем сделки; последняя заявка может быть исполнена частично
+     *
+     * @param bids Заявки обоих типов
+     * @param order Индексы заявок одной стороны в порядке приоритета исполнения
+     * @param volume Объем сделки
+     * @param price Цена сделки в минимальных единицах цены (см. {@link InstrumentSpec#getScale()})
+     * @param consumer Получатель исполнений
+     */
+    static void allocate(BidColumns bids, int[] order, long volume, long price, FillConsumer consumer) {
+        long remaining = volume;
+        for (int i = 0; i < order.length && remaining > 0; i++) {
+            int index = order[i];
+            int amount = (int) Math.min(bids.getAmount(index), remaining);
+            consumer.accept(index, bids.getType(index), amount, price);
+            remaining -= amount;
+        }
+        if (remaining > 0) {
+            throw new IllegalStateException("Not enough volume to allocate: " + remaining + " left");
+        }
+    }
+
+    /**
+     * Распределение по принципу "цена, затем пропорционально": заявки с ценой лучше граничной
+     * исполняются полностью, а оставшийся объем распределяется между заявками граничного уровня
+     * (на котором объем заявок превышает оставшийся объем сделки) пропорционально их количеству.
+     *
+     * Доли вычисляются в целых числах с округлением вниз, а недостающие после округления бумаги
+     * достаются заявкам с наибольшими остатками от деления (при равных остатках - более ранним).
+     * Граница остатков определяется выбором k-го элемента за линейное в среднем время,
+     * без сортировки заявок уровня.
+     *
+     * @param bids Заявки обоих типов
+     * @param order Индексы заявок одной стороны в порядке приоритета исполнения
+     * @param volume Объем сделки
+     * @param price Цена сделки в минимальных единицах цены (см. {@link InstrumentSpec#getScale()})
+     * @param consumer Получатель исполнений
+     */
+    static void allocateProRata(BidColumns bids, int[] order, long volume, long price, FillConsumer consumer) {
+        long remaining = volume;
+        int from = 0;
+        while (from < order.length && remaining > 0) {
+            long levelPrice = bids.getPrice(order[from]);
+            long levelVolume = 0;
+            int to = from;
+            while (to < order.length && bids.getPrice(order[to]) == levelPrice) {
+                levelVolume += bids.getAmount(order[to]);
+                to++;
+            }
+
+            if (levelVolume <= remaining) {
+                for (int i = from; i < to; i++) {
+                    consumer.accept(order[i], bids.getType(order[i]), bids.getAmount(order[i]), price);
+                }
+                remaining -= levelVolume;
+            }
+            else {
+                allocateLevel(bids, order, from, to, remaining, levelVolume, price, consumer);
+                remaining = 0;
+            }
+            from = to;
+        }
+        if (remaining > 0) {
+            throw new IllegalStateException("Not enough volume to allocate: " + remaining + " left");
+        }
+    }
+
+    /**
+     * Пропорциональное распределение объема между заявками одного ценового уровня
+     * (метод наибольших остатков)
+     */
+    private static void allocateLevel(BidColumns bids, int[] order, int from, int to,
+                                      long volume, long levelVolume, long price, FillConsumer consumer) {
+        int count = to - from;
+        long[] shares = new long[count];
+        long[] remainders = new long[count];
+        long allocated = 0;
+        for (int i = 0; i < count; i++) {
+            long amount = bids.getAmount(order[from + i]);
+            long product = volume * amount;
+            if (Math.multiplyHigh(volume, amount) == 0 && product >= 0) {
+                shares[i] = product / levelVolume;
+                remainders[i] = product % levelVolume;
+            }
+            else {
+                // произведение не помещается в long; доля меньше объема сделки, остаток - объема уровня
+                BigInteger[] division = BigInteger.valueOf(volume).multiply(BigInteger.valueOf(amount))
+                    .divideAndRemainder(BigInteger.valueOf(levelVolume));
+                shares[i] = division[0].longValueExact();
+                remainders[i] = division[1].longValueExact();
+            }
+            allocated += shares[i];
+        }
+
+        // количество бумаг, недораспределенных из-за округления вниз, меньше количества заявок
+        int extra = (int) (volume - allocated);
+        long threshold = Long.MAX_VALUE;
+        int thresholdExtra = 0;
+        if (extra > 0) {
+            threshold = select(remainders.clone(), count - extra);
+            thresholdExtra = extra;
+            for (long remainder : remainders) {
+                if (remainder > threshold) {
+                    thresholdExtra--;
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            int index = order[from + i];
+            long amount = shares[i];
+            if (remainders[i] > threshold || remainders[i] == threshold && thresholdExtra-- > 0) {
+                amount++;
+            }
+            if (amount > 0) {
+                consumer.accept(index, bids.getType(index), (int) amount, price);
+            }
+        }
+    }
+
+    /**
+     * Выбор k-го по возрастанию элемента массива (алгоритм Хоара); массив переупорядочивается
+     *
+     * @return Значение, которое стояло бы на позиции {@code k} в отсортированном массиве
+     */
+    static long select(long[] values, int k) {
+        int left = 0;
+        int right = values.length - 1;
+        while (left < right) {
+            long pivot = median(values[left], values[(left + right) >>> 1], values[right]);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    long value = values[i];
+                    values[i++] = values[j];
+                    values[j--] = value;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            }
+            else if (k >= i) {
+                left = i;
+            }
+            else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+
+    private static long median(long a, long b, long c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+}
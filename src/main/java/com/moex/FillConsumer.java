@@ -0,0 +1,21 @@
+package com.moex;
+
+/**
+ * Получатель исполнений заявок при распределении объема сделки
+ * ({@link DiscreteAuction#allocate(FillConsumer)})
+ *
+ * @author Alexey Prudnikov
+ */
+@FunctionalInterface
+public interface FillConsumer {
+
+    /**
+     * Обработка исполнения очередной заявки
+     *
+     * @param bid Индекс заявки (порядковый номер среди корректных заявок, начиная с 0)
+     * @param type Тип заявки
+     * @param amount Исполненное количество ценных бумаг
+     * @param price Цена исполнения в минимальных единицах цены (см. {@link InstrumentSpec#getScale()})
+     */
+    void accept(int bid, Bid.BidType type, int amount, long price);
+}
@@ -0,0 +1,64 @@
+package com.moex;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR: чтение и разбор участка входных данных (буфера потока или отображенного
+ * в память участка файла)
+ *
+ * @author Alexey Prudnikov
+ */
+@Name("com.moex.IngestChunk")
+@Label("Ingest Chunk")
+@Description("Read and parse of one chunk of auction input")
+@Category({"MOEX", "Auction"})
+@StackTrace(false)
+final class IngestChunkEvent extends Event {
+
+    @Label("Source")
+    String source;
+
+    @Label("Offset")
+    @DataAmount
+    long offset;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Lines")
+    long lines;
+
+    @Label("Accepted Bids")
+    long bids;
+
+    /**
+     * @return Начатое событие или {@code null}, если событие не записывается
+     */
+    static IngestChunkEvent start() {
+        IngestChunkEvent event = new IngestChunkEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    void finish(String source, long offset, long bytes, long lines, long bids) {
+        end();
+        if (shouldCommit()) {
+            this.source = source;
+            this.offset = offset;
+            this.bytes = bytes;
+            this.lines = lines;
+            this.bids = bids;
+            commit();
+        }
+    }
+}
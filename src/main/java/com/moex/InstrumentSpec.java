@@ -0,0 +1,210 @@
+package com.moex;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * Параметры торгов ценной бумагой: шаг цены, допустимые диапазоны цены и количества.
+ *
+ * Цены внутри аукциона хранятся целыми числами в минимальных единицах 10^-{@link #getScale()}
+ * (для {@link #DEFAULT} - в копейках), где количество знаков после запятой определяется шагом цены;
+ * ценовой уровень - номер цены в сетке от минимальной цены с шагом {@link #getTickSize()}.
+ * Заявки с ценой вне сетки или количеством вне диапазона отбрасываются при разборе.
+ * Цены ограничены только диапазоном long: сумма оптимальных цен при подборе цены сделки
+ * накапливается в 128 битах ({@link OptimalPrices}).
+ *
+ * Количество ценовых уровней определяет способ хранения книги {@link PriceLevelBook}: если
+ * уровней не больше {@value #DENSE_LEVELS}, объемы хранятся в массивах по всем уровням сетки,
+ * иначе - только по непустым уровням ({@link #isDense()}).
+ *
+ * @author Alexey Prudnikov
+ */
+public final class InstrumentSpec {
+
+    /**
+     * Наибольшее количество ценовых уровней, при котором книга хранит объемы по всем уровням
+     */
+    static final int DENSE_LEVELS = 1 << 20;
+
+    // с большим количеством знаков цена в 18 значащих цифр не помещается в long
+    private static final int MAX_SCALE = 9;
+
+    /**
+     * Параметры по умолчанию: шаг цены 0.01, цены от {@link ParseBidFunction#ACCEPTABLE_PRICE},
+     * количество от {@link ParseBidFunction#ACCEPTABLE_AMOUNT}
+     */
+    public static final InstrumentSpec DEFAULT = new InstrumentSpec(
+        new BigDecimal("0.01"),
+        BigDecimal.valueOf(ParseBidFunction.ACCEPTABLE_PRICE.getMinimum(), 2),
+        BigDecimal.valueOf(ParseBidFunction.ACCEPTABLE_PRICE.getMaximum(), 2),
+        ParseBidFunction.ACCEPTABLE_AMOUNT.getMinimum(),
+        ParseBidFunction.ACCEPTABLE_AMOUNT.getMaximum()
+    );
+
+    private final int scale;
+    private final long tickSize;
+    private final long minPrice;
+    private final long maxPrice;
+    private final int minAmount;
+    private final int maxAmount;
+    private final long levels;
+
+    /**
+     * @param tickSize Шаг цены в рублях, например {@code 0.0001}
+     * @param minPrice Минимальная цена в рублях, кратная шагу цены
+     * @param maxPrice Максимальная цена в рублях, кратная шагу цены
+     * @param minAmount Минимальное количество бумаг в заявке, не меньше 1
+     * @param maxAmount Максимальное количество бумаг в заявке
+     *
+     * @throws IllegalArgumentException Некорректные параметры
+     */
+    public InstrumentSpec(BigDecimal tickSize, BigDecimal minPrice, BigDecimal maxPrice, int minAmount, int maxAmount) {
+        if (tickSize.signum() <= 0 || minPrice.signum() <= 0 || minPrice.compareTo(maxPrice) > 0) {
+            throw new IllegalArgumentException("Invalid price grid: tick " + tickSize + ", prices " + minPrice + ".." + maxPrice);
+        }
+        if (minAmount < 1 || minAmount > maxAmount || maxAmount == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid amount range: " + minAmount + ".." + maxAmount);
+        }
+        this.scale = Math.max(tickSize.stripTrailingZeros().scale(), 0);
+        if (scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Tick size is too small: " + tickSize);
+        }
+        try {
+            this.tickSize = tickSize.movePointRight(scale).longValueExact();
+            this.minPrice = minPrice.movePointRight(scale).longValueExact();
+            this.maxPrice = maxPrice.movePointRight(scale).longValueExact();
+        }
+        catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("Prices " + minPrice + ".." + maxPrice + " are not multiples of tick " + tickSize, ex);
+        }
+        if (this.minPrice % this.tickSize != 0 || this.maxPrice % this.tickSize != 0) {
+            throw new IllegalArgumentException("Prices " + minPrice + ".." + maxPrice + " are not multiples of tick " + tickSize);
+        }
+        // номера уровней сортируются как 64-битные ключи (RadixSort), поэтому количество
+        // уровней ограничено только тем, что цены помещаются в long
+        this.levels = (this.maxPrice - this.minPrice) / this.tickSize + 1;
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+    }
+
+    /**
+     * Разбор параметров из строки вида {@code tick:minPrice:maxPrice:minAmount:maxAmount},
+     * например {@code 0.0001:0.0001:500000:1:1000000}
+     *
+     * @param value Строка с параметрами
+     *
+     * @return Параметры торгов
+     *
+     * @throws IllegalArgumentException Строка не соответствует формату или параметры некорректны
+     */
+    public static InstrumentSpec valueOf(String value) {
+        String[] values = value.split(":");
+        if (values.length != 5) {
+            throw new IllegalArgumentException("Expected tick:minPrice:maxPrice:minAmount:maxAmount, got " + value);
+        }
+        return new InstrumentSpec(new BigDecimal(values[0]), new BigDecimal(values[1]), new BigDecimal(values[2]),
+            Integer.parseInt(values[3]), Integer.parseInt(values[4]));
+    }
+
+    /**
+     * @return Количество знаков после запятой в ценах
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return Шаг цены в минимальных единицах цены
+     */
+    public long getTickSize() {
+        return tickSize;
+    }
+
+    /**
+     * @return Минимальная цена в минимальных единицах цены
+     */
+    public long getMinPrice() {
+        return minPrice;
+    }
+
+    /**
+     * @return Максимальная цена в минимальных единицах цены
+     */
+    public long getMaxPrice() {
+        return maxPrice;
+    }
+
+    public int getMinAmount() {
+        return minAmount;
+    }
+
+    public int getMaxAmount() {
+        return maxAmount;
+    }
+
+    /**
+     * @return Количество ценовых уровней в сетке
+     */
+    public long getLevelCount() {
+        return levels;
+    }
+
+    /**
+     * @return {@code true}, если книга хранит объемы по всем ценовым уровням сетки
+     */
+    public boolean isDense() {
+        return levels <= DENSE_LEVELS;
+    }
+
+    /**
+     * Проверка заявки: количество в допустимом диапазоне, цена в диапазоне и кратна шагу цены
+     *
+     * @param amount Количество бумаг
+     * @param price Цена в минимальных единицах цены
+     */
+    public boolean accepts(int amount, long price) {
+        return amount >= minAmount && amount <= maxAmount
+            && price >= minPrice && price <= maxPrice
+            && (tickSize == 1 || (price - minPrice) % tickSize == 0);
+    }
+
+    /**
+     * @return Номер ценового уровня для допустимой цены
+     */
+    long level(long price) {
+        return (price - minPrice) / tickSize;
+    }
+
+    /**
+     * @return Цена ценового уровня в минимальных единицах цены
+     */
+    long price(long level) {
+        return minPrice + level * tickSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof InstrumentSpec)) {
+            return false;
+        }
+        InstrumentSpec other = (InstrumentSpec) o;
+        return scale == other.scale && tickSize == other.tickSize && minPrice == other.minPrice
+            && maxPrice == other.maxPrice && minAmount == other.minAmount && maxAmount == other.maxAmount;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(scale, tickSize, minPrice, maxPrice, minAmount, maxAmount);
+    }
+
+    @Override
+    public String toString() {
+        return BigDecimal.valueOf(tickSize, scale).toPlainString() + ":"
+            + BigDecimal.valueOf(minPrice, scale).toPlainString() + ":"
+            + BigDecimal.valueOf(maxPrice, scale).toPlainString() + ":"
+            + minAmount + ":" + maxAmount;
+    }
+}
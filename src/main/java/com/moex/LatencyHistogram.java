@@ -0,0 +1,267 @@
+package com.moex;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма задержек с логарифмическими интервалами (в духе HdrHistogram): значения от 0 до
+ * {@link Long#MAX_VALUE} наносекунд делятся на степени двойки, а каждая степень - на
+ * {@value #SUB_BUCKETS} равных интервалов, поэтому относительная погрешность значения
+ * не превышает 1/{@value #SUB_BUCKETS} (менее 1%), а вся гистограмма занимает несколько тысяч счетчиков.
+ *
+ * Запись значения ({@link #record(long)}) не выделяет память и не требует синхронизации между
+ * потоками: каждый поток пишет в собственный набор счетчиков (создается при первой записи потоком),
+ * а счетчики потока изменяет только этот поток упорядоченной записью без CAS. Снимки
+ * ({@link #snapshot()}, {@link #intervalSnapshot()}) суммируют счетчики всех потоков и могут
+ * выполняться параллельно с записью.
+ *
+ * @author Alexey Prudnikov
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    // в последних ячейках счетчиков потока - сумма значений
+    private static final int SUM = BUCKETS;
+
+    private final List<AtomicLongArray> recorders = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<AtomicLongArray> recorder = ThreadLocal.withInitial(this::addRecorder);
+
+    // накопленные счетчики на момент предыдущего снимка за интервал
+    private long[] intervalStart = new long[BUCKETS + 1];
+
+    private AtomicLongArray addRecorder() {
+        AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+        recorders.add(counts);
+        return counts;
+    }
+
+    /**
+     * Запись значения
+     *
+     * @param nanos Задержка в наносекундах (отрицательные значения считаются нулевыми)
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        AtomicLongArray counts = recorder.get();
+        int bucket = bucket(value);
+        // единственный пишущий поток: упорядоченной записи достаточно для видимости в снимках
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+        counts.lazySet(SUM, counts.get(SUM) + value);
+    }
+
+    /**
+     * Номер интервала для значения: значения меньше {@code 2 * SUB_BUCKETS} попадают
+     * в интервалы единичной ширины, далее ширина интервала удваивается с каждой степенью двойки
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return Наибольшее значение, попадающее в интервал
+     */
+    static long highestValue(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * @return Распределение всех записанных значений
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(sum());
+    }
+
+    /**
+     * Распределение значений, записанных после предыдущего вызова этого метода (или создания гистограммы)
+     *
+     * @return Распределение значений за интервал
+     */
+    public synchronized Snapshot intervalSnapshot() {
+        long[] total = sum();
+        long[] interval = new long[BUCKETS + 1];
+        for (int i = 0; i <= BUCKETS; i++) {
+            interval[i] = total[i] - intervalStart[i];
+        }
+        intervalStart = total;
+        return new Snapshot(interval);
+    }
+
+    private long[] sum() {
+        long[] total = new long[BUCKETS + 1];
+        for (AtomicLongArray counts : recorders) {
+            for (int i = 0; i <= BUCKETS; i++) {
+                total[i] += counts.get(i);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Неизменяемое распределение значений
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long totalCount;
+
+        /**
+         * @param counts Счетчики интервалов и сумма значений в последней ячейке
+         */
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += counts[i];
+            }
+            this.totalCount = count;
+        }
+
+        public long getCount() {
+            return totalCount;
+        }
+
+        /**
+         * @return Среднее значение в наносекундах (0, если значений нет)
+         */
+        public double getMean() {
+            return totalCount == 0 ? 0 : (double) counts[SUM] / totalCount;
+        }
+
+        /**
+         * @return Оценка сверху наибольшего значения (0, если значений нет)
+         */
+        public long getMax() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (counts[i] != 0) {
+                    return highestValue(i);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Значение, не меньше которого не более {@code (100 - percentile)}% записанных значений
+         *
+         * @param percentile Процентиль от 0 до 100
+         *
+         * @return Оценка сверху значения процентиля в наносекундах (0, если значений нет)
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (totalCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * totalCount));
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += counts[i];
+                if (count >= rank) {
+                    return highestValue(i);
+                }
+            }
+            return getMax();
+        }
+
+        /**
+         * Компактное двоичное представление: для каждого непустого интервала - расстояние
+         * от предыдущего непустого интервала и счетчик, затем сумма значений; все числа
+         * записываются в формате varint (7 бит на байт)
+         *
+         * @return Закодированное распределение
+         */
+        public byte[] encode() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int previous = -1;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (counts[i] != 0) {
+                    writeVarint(out, i - previous);
+                    writeVarint(out, counts[i]);
+                    previous = i;
+                }
+            }
+            // нулевое расстояние отделяет интервалы от суммы значений
+            writeVarint(out, 0);
+            writeVarint(out, counts[SUM]);
+            return out.toByteArray();
+        }
+
+        /**
+         * Восстановление распределения из {@link #encode()}
+         *
+         * @param data Закодированное распределение
+         *
+         * @return Распределение
+         *
+         * @throws IllegalArgumentException Данные повреждены
+         */
+        public static Snapshot decode(byte[] data) {
+            long[] counts = new long[BUCKETS + 1];
+            int[] position = {0};
+            int bucket = -1;
+            while (true) {
+                long gap = readVarint(data, position);
+                if (gap == 0) {
+                    break;
+                }
+                bucket += gap;
+                if (bucket >= BUCKETS) {
+                    throw new IllegalArgumentException("Bucket is out of range: " + bucket);
+                }
+                counts[bucket] = readVarint(data, position);
+            }
+            counts[SUM] = readVarint(data, position);
+            return new Snapshot(counts);
+        }
+
+        private static void writeVarint(ByteArrayOutputStream out, long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private static long readVarint(byte[] data, int[] position) {
+            long value = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                if (position[0] == data.length) {
+                    throw new IllegalArgumentException("Unexpected end of encoded histogram");
+                }
+                byte b = data[position[0]++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in encoded histogram");
+        }
+
+        /**
+         * @return Количество значений и процентили в наносекундах одной строкой вида {@code key=value}
+         */
+        @Override
+        public String toString() {
+            return "count=" + totalCount
+                + " mean=" + Math.round(getMean())
+                + " p50=" + getValueAtPercentile(50)
+                + " p90=" + getValueAtPercentile(90)
+                + " p99=" + getValueAtPercentile(99)
+                + " p99.9=" + getValueAtPercentile(99.9)
+                + " p99.99=" + getValueAtPercentile(99.99)
+                + " max=" + getMax();
+        }
+    }
+}
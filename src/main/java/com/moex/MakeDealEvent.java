@@ -0,0 +1,62 @@
+package com.moex;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR: определение оптимальной цены ({@link DiscreteAuction#makeDeal()}) или расчет
+ * индикативного результата книги ({@link OrderBook#currentIndicativeDeal()})
+ *
+ * @author Alexey Prudnikov
+ */
+@Name("com.moex.MakeDeal")
+@Label("Make Deal")
+@Description("Computation of the auction price and volume")
+@Category({"MOEX", "Auction"})
+@StackTrace(false)
+final class MakeDealEvent extends Event {
+
+    static final String ORDER_BOOK = "ORDER_BOOK";
+
+    @Label("Engine")
+    String engine;
+
+    @Label("Price Levels")
+    long levels;
+
+    @Label("Cached")
+    @Description("Result was computed by an earlier call")
+    boolean cached;
+
+    @Label("Amount")
+    long amount;
+
+    @Label("Price")
+    @Description("Deal price in minimal price units (see InstrumentSpec#getScale)")
+    long price;
+
+    /**
+     * @return Начатое событие
+     */
+    static MakeDealEvent start() {
+        MakeDealEvent event = new MakeDealEvent();
+        event.begin();
+        return event;
+    }
+
+    void finish(String engine, long levels, boolean cached, DealResult deal) {
+        end();
+        if (shouldCommit()) {
+            this.engine = engine;
+            this.levels = levels;
+            this.cached = cached;
+            this.amount = deal.getBestAmount();
+            this.price = deal.getBestPrice();
+            commit();
+        }
+    }
+}
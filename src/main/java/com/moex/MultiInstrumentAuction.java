@@ -0,0 +1,264 @@
+package com.moex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Дискретный аукцион по множеству ценных бумаг одновременно.
+ *
+ * Каждая строка входных данных начинается с кода ценной бумаги, за которым через
+ * разделитель следует заявка в обычном формате: {@code SBER B 254 21.25}. Строки без кода
+ * или с некорректной заявкой отбрасываются.
+ *
+ * Во время чтения заявки раскладываются по ценным бумагам ({@link BidColumns}), а затем
+ * оптимальная цена для каждой бумаги определяется независимо в отдельной задаче
+ * {@link ForkJoinPool}: задачи распределяются между потоками по принципу work stealing.
+ * Бумага, у которой заявок не меньше, чем ценовых уровней в сетке, рассчитывается в книге
+ * {@link PriceLevelBook}; освобожденные книги переиспользуются бумагами с теми же параметрами
+ * торгов в пределах одного вызова {@link #makeDeals()} и не остаются на потоках общего пула
+ * после него. Очистка и проход по книге занимают O(L), поэтому заявки остальных бумаг
+ * сортируются ({@link DiscreteAuction.Engine#SWEEP}), и время их расчета не зависит
+ * от количества уровней сетки. Задержка расчета каждой бумаги
+ * записывается в гистограмму ({@link #getDealLatency()}).
+ *
+ * Шаг цены и допустимые диапазоны цены и количества задаются для каждой бумаги отдельно
+ * ({@link InstrumentSpec}); для бумаг без заданных параметров используются параметры по умолчанию
+ * (если они не заданы - {@link InstrumentSpec#DEFAULT}).
+ *
+ * @author Alexey Prudnikov
+ */
+public class MultiInstrumentAuction {
+
+    private final ForkJoinPool pool;
+    private final InstrumentSpec defaultSpec;
+    private final Map<String, InstrumentSpec> specs;
+    private final Charset charset = Charset.defaultCharset();
+    private final Map<String, BidColumns> instrumentBids = new HashMap<>();
+    private final Map<InstrumentSpec, BidParser> parsers = new HashMap<>();
+    private final LatencyHistogram dealLatency = new LatencyHistogram();
+
+    private SortedMap<String, DealResult> results;
+
+    // последняя разобранная заявка: бумага заводится только при наличии у нее корректной заявки
+    private Bid.BidType parsedType;
+    private int parsedAmount;
+    private long parsedPrice;
+    private final BidConsumer parsedBid = (type, amount, price) -> {
+        parsedType = type;
+        parsedAmount = amount;
+        parsedPrice = price;
+    };
+
+    // код ценной бумаги из предыдущей строки: соседние строки обычно относятся к одной бумаге
+    private byte[] lastInstrument;
+    private String lastCode;
+    private BidParser lastParser;
+    private BidColumns lastBids;
+
+    public MultiInstrumentAuction() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool Пул, в котором определяются оптимальные цены по ценным бумагам
+     */
+    public MultiInstrumentAuction(ForkJoinPool pool) {
+        this(pool, Collections.emptyMap());
+    }
+
+    /**
+     * @param pool Пул, в котором определяются оптимальные цены по ценным бумагам
+     * @param specs Параметры торгов по кодам ценных бумаг
+     */
+    public MultiInstrumentAuction(ForkJoinPool pool, Map<String, InstrumentSpec> specs) {
+        this(pool, InstrumentSpec.DEFAULT, specs);
+    }
+
+    /**
+     * @param pool Пул, в котором определяются оптимальные цены по ценным бумагам
+     * @param defaultSpec Параметры торгов бумаг, для которых они не заданы отдельно
+     * @param specs Параметры торгов по кодам ценных бумаг
+     */
+    public MultiInstrumentAuction(ForkJoinPool pool, InstrumentSpec defaultSpec, Map<String, InstrumentSpec> specs) {
+        this.pool = pool;
+        this.defaultSpec = defaultSpec;
+        this.specs = new HashMap<>(specs);
+    }
+
+    /**
+     * @return Задержки определения оптимальной цены по отдельным ценным бумагам в наносекундах
+     */
+    public LatencyHistogram getDealLatency() {
+        return dealLatency;
+    }
+
+    /**
+     * Чтение входных данных и распределение заявок по ценным бумагам
+     *
+     * @param dataSource Поток с входными данными
+     */
+    public void readData(InputStream dataSource) {
+        BidParser parser = parsers.computeIfAbsent(defaultSpec, BidParser::new);
+        try {
+            parser.parseLines(dataSource, (buf, from, to) -> parseLine(parser, buf, from, to));
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Разбор строки: отделение кода ценной бумаги и разбор заявки в книгу этой бумаги
+     */
+    private void parseLine(BidParser parser, byte[] buf, int from, int to) {
+        int instrumentEnd = from;
+        while (instrumentEnd < to && !BidParser.isSeparator(buf[instrumentEnd])) {
+            instrumentEnd++;
+        }
+        int bidStart = BidParser.skipSeparators(buf, instrumentEnd, to);
+        if (instrumentEnd == from || bidStart == instrumentEnd) {
+            // нет кода ценной бумаги или за ним не следует разделитель
+            parser.reject(buf, from, to);
+            return;
+        }
+
+        instrument(buf, from, instrumentEnd);
+        if (lastParser.parseLine(buf, bidStart, to, parsedBid)) {
+            if (lastBids == null) {
+                lastBids = instrumentBids.computeIfAbsent(lastCode, code -> new BidColumns());
+            }
+            lastBids.add(parsedType, parsedAmount, parsedPrice);
+        }
+    }
+
+    /**
+     * Выбор ценной бумаги строки и разборщика заявок по ее параметрам торгов; строка с кодом
+     * создается только при смене бумаги относительно предыдущей строки
+     */
+    private void instrument(byte[] buf, int from, int to) {
+        int length = to - from;
+        if (lastInstrument != null && length == lastInstrument.length) {
+            int i = 0;
+            while (i < length && buf[from + i] == lastInstrument[i]) {
+                i++;
+            }
+            if (i == length) {
+                return;
+            }
+        }
+
+        lastInstrument = Arrays.copyOfRange(buf, from, to);
+        lastCode = new String(lastInstrument, charset);
+        lastParser = parsers.computeIfAbsent(spec(lastCode), BidParser::new);
+        // хранилище заявок заводится только при наличии у бумаги корректной заявки
+        lastBids = instrumentBids.get(lastCode);
+    }
+
+    private InstrumentSpec spec(String instrument) {
+        return specs.getOrDefault(instrument, defaultSpec);
+    }
+
+    /**
+     * Определение оптимальной цены для каждой ценной бумаги
+     *
+     * @return Результаты по ценным бумагам, упорядоченные по коду бумаги
+     */
+    public SortedMap<String, DealResult> makeDeals() {
+        if (results != null) {
+            return results;
+        }
+
+        String[] instruments = instrumentBids.keySet().toArray(new String[0]);
+        Arrays.sort(instruments);
+        DealResult[] deals = new DealResult[instruments.length];
+        // книг одновременно используется не больше, чем задач выполняется параллельно
+        Map<InstrumentSpec, Queue<PriceLevelBook>> books = new ConcurrentHashMap<>();
+        pool.invoke(new MatchAction(instruments, deals, books, 0, instruments.length));
+
+        results = new TreeMap<>();
+        for (int i = 0; i < instruments.length; i++) {
+            results.put(instruments[i], deals[i]);
+        }
+        return results;
+    }
+
+    /**
+     * Определение оптимальной цены по одной ценной бумаге
+     *
+     * @param books Свободные книги по параметрам торгов, общие для задач одного вызова {@link #makeDeals()}
+     */
+    private DealResult makeDeal(String instrument, BidColumns bids, Map<InstrumentSpec, Queue<PriceLevelBook>> books) {
+        InstrumentSpec spec = spec(instrument);
+        if (bids.size() < spec.getLevelCount()) {
+            DiscreteAuction auction = new DiscreteAuction(DiscreteAuction.Engine.SWEEP, spec);
+            auction.load(bids);
+            return auction.makeDeal();
+        }
+
+        Queue<PriceLevelBook> freeBooks = books.computeIfAbsent(spec, key -> new ConcurrentLinkedQueue<>());
+        PriceLevelBook book = freeBooks.poll();
+        if (book == null) {
+            book = new PriceLevelBook(spec);
+        }
+        else {
+            book.clear();
+        }
+        try {
+            for (int i = 0; i < bids.size(); i++) {
+                book.accept(bids.getType(i), bids.getAmount(i), bids.getPrice(i));
+            }
+            return book.match();
+        }
+        finally {
+            freeBooks.offer(book);
+        }
+    }
+
+    /**
+     * Задача определения оптимальных цен для диапазона ценных бумаг: диапазон делится
+     * пополам, пока в нем не останется одна бумага
+     */
+    private final class MatchAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String[] instruments;
+        private final DealResult[] deals;
+        private final Map<InstrumentSpec, Queue<PriceLevelBook>> books;
+        private final int from;
+        private final int to;
+
+        private MatchAction(String[] instruments, DealResult[] deals, Map<InstrumentSpec, Queue<PriceLevelBook>> books,
+                            int from, int to) {
+            this.instruments = instruments;
+            this.deals = deals;
+            this.books = books;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to) {
+                    long start = System.nanoTime();
+                    deals[from] = makeDeal(instruments[from], instrumentBids.get(instruments[from]), books);
+                    dealLatency.record(System.nanoTime() - start);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                new MatchAction(instruments, deals, books, from, middle),
+                new MatchAction(instruments, deals, books, middle, to)
+            );
+        }
+    }
+}
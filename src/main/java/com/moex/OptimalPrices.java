@@ -0,0 +1,66 @@
+package com.moex;
+
+/**
+ * Сумма и количество оптимальных цен, по которым вычисляется цена сделки ({@link DealResult}).
+ *
+ * Цены в минимальных единицах могут занимать почти весь диапазон long (см. {@link InstrumentSpec}),
+ * поэтому уже сумма двух цен может не поместиться в long; сумма хранится в двух long (128 бит)
+ * с переносом из младшей части в старшую.
+ *
+ * @author Alexey Prudnikov
+ */
+final class OptimalPrices {
+
+    private long sumLow;
+    private long sumHigh;
+    private long count;
+
+    /**
+     * Добавление пары оптимальных цен: цены продажи и наименьшей цены покупки, не меньшей ее
+     *
+     * @param sellPrice Цена продажи в минимальных единицах цены
+     * @param buyPrice Цена покупки в минимальных единицах цены
+     */
+    void add(long sellPrice, long buyPrice) {
+        addSum(sellPrice, 0);
+        addSum(buyPrice, 0);
+        count += 2;
+    }
+
+    /**
+     * Добавление оптимальных цен другой части кривой предложения
+     */
+    void addAll(OptimalPrices other) {
+        addSum(other.sumLow, other.sumHigh);
+        count += other.count;
+    }
+
+    private void addSum(long low, long high) {
+        long sum = sumLow + low;
+        if (Long.compareUnsigned(sum, sumLow) < 0) {
+            high++;
+        }
+        sumLow = sum;
+        sumHigh += high;
+    }
+
+    void clear() {
+        sumLow = 0;
+        sumHigh = 0;
+        count = 0;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @param bestAmount Объем сделки
+     * @param scale Количество знаков после запятой в ценах
+     *
+     * @return Результат с ценой сделки - средним оптимальных цен
+     */
+    DealResult toDeal(long bestAmount, int scale) {
+        return new DealResult(sumHigh, sumLow, count, bestAmount, scale);
+    }
+}
@@ -0,0 +1,246 @@
+package com.moex;
+
+/**
+ * Инкрементальная книга заявок для фазы сбора заявок аукциона: после каждого добавления,
+ * изменения или снятия заявки можно получить индикативный результат аукциона
+ * ({@link #currentIndicativeDeal()}), не перечитывая и не пересортировывая заявки.
+ *
+ * Объемы по ценовым уровням хранятся в деревьях Фенвика ({@link FenwickTree}), поэтому любое
+ * изменение книги выполняется за O(log(L)), а расчет индикативного результата - за O(log²(L)),
+ * где L - количество ценовых уровней; от количества заявок в книге эти оценки не зависят.
+ *
+ * Обозначим через B(p) объем покупок по цене не ниже p, через S(p) - объем продаж по цене
+ * не выше p. Объем сделки min(B(p), S(p)) как функция цены сначала не убывает, а затем
+ * не возрастает, поэтому его максимум M находится двоичным поиском точки пересечения B и S,
+ * а все цены с объемом M образуют отрезок [lo, hi]. Оптимальные цены в {@link DiscreteAuction}
+ * - это пары (цена продажи s, ближайшая не меньшая цена покупки) для всех уровней продажи
+ * s из этого отрезка; ближайшая цена покупки для всех таких уровней, кроме, быть может, lo,
+ * равна hi, поэтому сумма оптимальных цен вычисляется несколькими запросами к деревьям.
+ *
+ * Экземпляр не потокобезопасен.
+ *
+ * @author Alexey Prudnikov
+ */
+public final class OrderBook {
+
+    private static final int MIN_AMOUNT = ParseBidFunction.ACCEPTABLE_AMOUNT.getMinimum();
+    private static final int MAX_AMOUNT = ParseBidFunction.ACCEPTABLE_AMOUNT.getMaximum();
+    private static final long MIN_PRICE = PriceLevelBook.MIN_PRICE;
+    private static final long MAX_PRICE = PriceLevelBook.MAX_PRICE;
+    private static final int LEVELS = PriceLevelBook.LEVELS;
+
+    private final BidColumns orders;
+
+    private final FenwickTree buyVolumes;
+    private final FenwickTree sellVolumes;
+    // количество непустых уровней продажи и сумма их индексов
+    private final FenwickTree sellLevels;
+    private final FenwickTree sellLevelIndexes;
+    private final long[] sellLevelVolumes;
+
+    public OrderBook() {
+        this(new BidColumns(), new long[LEVELS], new long[LEVELS]);
+    }
+
+    /**
+     * Восстановление книги из снимка ({@link BookSnapshot}) за O(n + L)
+     *
+     * @param orders Заявки книги, включая снятые (с нулевым количеством)
+     * @param buyLevelVolumes Объемы покупок по ценовым уровням
+     * @param sellLevelVolumes Объемы продаж по ценовым уровням
+     */
+    OrderBook(BidColumns orders, long[] buyLevelVolumes, long[] sellLevelVolumes) {
+        this.orders = orders;
+        this.buyVolumes = new FenwickTree(buyLevelVolumes);
+        this.sellVolumes = new FenwickTree(sellLevelVolumes);
+        this.sellLevelVolumes = sellLevelVolumes.clone();
+        long[] levels = new long[LEVELS];
+        long[] levelIndexes = new long[LEVELS];
+        for (int level = 0; level < LEVELS; level++) {
+            if (sellLevelVolumes[level] != 0) {
+                levels[level] = 1;
+                levelIndexes[level] = level;
+            }
+        }
+        this.sellLevels = new FenwickTree(levels);
+        this.sellLevelIndexes = new FenwickTree(levelIndexes);
+    }
+
+    /**
+     * Добавление заявки в книгу
+     *
+     * @param type Тип заявки
+     * @param amount Количество ценных бумаг
+     * @param price Цена заявки в копейках
+     *
+     * @return Идентификатор заявки для ее последующего изменения или снятия
+     */
+    public int addBid(Bid.BidType type, int amount, long price) {
+        BookUpdateEvent event = BookUpdateEvent.start();
+        checkBid(amount, price);
+        int id = orders.add(type, amount, price);
+        changeVolume(type, price, amount);
+        if (event != null) {
+            event.finish(BookUpdateEvent.ADD, id, type, amount, price);
+        }
+        return id;
+    }
+
+    /**
+     * @param id Идентификатор заявки
+     *
+     * @return {@code true}, если заявка с таким идентификатором есть в книге и не снята
+     */
+    public boolean isActive(int id) {
+        return id >= 0 && id < orders.size() && orders.getAmount(id) != 0;
+    }
+
+    /**
+     * Снятие заявки
+     *
+     * @param id Идентификатор заявки
+     *
+     * @return {@code true}, если заявка была активна, {@code false}, если она уже снята
+     */
+    public boolean cancelBid(int id) {
+        checkId(id);
+        int amount = orders.getAmount(id);
+        if (amount == 0) {
+            return false;
+        }
+        BookUpdateEvent event = BookUpdateEvent.start();
+        changeVolume(orders.getType(id), orders.getPrice(id), -amount);
+        orders.setAmount(id, 0);
+        if (event != null) {
+            event.finish(BookUpdateEvent.CANCEL, id, orders.getType(id), amount, orders.getPrice(id));
+        }
+        return true;
+    }
+
+    /**
+     * Изменение количества и цены активной заявки
+     *
+     * @param id Идентификатор заявки
+     * @param amount Новое количество ценных бумаг
+     * @param price Новая цена заявки в копейках
+     */
+    public void amendBid(int id, int amount, long price) {
+        checkId(id);
+        checkBid(amount, price);
+        if (orders.getAmount(id) == 0) {
+            throw new IllegalStateException("Bid " + id + " is cancelled");
+        }
+        BookUpdateEvent event = BookUpdateEvent.start();
+        Bid.BidType type = orders.getType(id);
+        changeVolume(type, orders.getPrice(id), -orders.getAmount(id));
+        changeVolume(type, price, amount);
+        orders.setAmount(id, amount);
+        orders.setPrice(id, price);
+        if (event != null) {
+            event.finish(BookUpdateEvent.AMEND, id, type, amount, price);
+        }
+    }
+
+    /**
+     * Расчет индикативного результата аукциона по текущему состоянию книги;
+     * результат совпадает с {@link DiscreteAuction#makeDeal()} для активных заявок
+     *
+     * @return Результат подбора оптимальной цены в виде экземпляра объекта {@link DealResult}
+     */
+    public DealResult currentIndicativeDeal() {
+        MakeDealEvent event = MakeDealEvent.start();
+        DealResult deal = indicativeDeal();
+        event.finish(MakeDealEvent.ORDER_BOOK, LEVELS, false, deal);
+        return deal;
+    }
+
+    private DealResult indicativeDeal() {
+        long totalBuyVolume = buyVolumes.sum();
+
+        // последний уровень, на котором объем продаж S(p) еще меньше объема покупок B(p)
+        int low = -1;
+        int high = LEVELS - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (sellVolumes.prefixSum(middle) < totalBuyVolume - buyVolumes.prefixSum(middle - 1)) {
+                low = middle;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        int crossing = low;
+
+        long bestAmount = 0;
+        if (crossing >= 0) {
+            bestAmount = sellVolumes.prefixSum(crossing);
+        }
+        if (crossing + 1 < LEVELS) {
+            bestAmount = Math.max(bestAmount, totalBuyVolume - buyVolumes.prefixSum(crossing));
+        }
+        if (bestAmount == 0) {
+            return new DealResult();
+        }
+
+        // отрезок цен [lo, hi], на котором объем сделки равен максимальному
+        int lo = sellVolumes.lowerBound(bestAmount);
+        int hi = buyVolumes.lowerBound(totalBuyVolume - bestAmount + 1);
+        long levels = sellLevels.rangeSum(lo, hi);
+        int loBuyLevel = buyVolumes.lowerBound(buyVolumes.prefixSum(lo - 1) + 1);
+
+        long optimalLevelsSum = sellLevelIndexes.rangeSum(lo, hi) + loBuyLevel + (levels - 1) * hi;
+        return new DealResult(
+            optimalLevelsSum + 2 * levels * MIN_PRICE,
+            Math.toIntExact(2 * levels),
+            bestAmount
+        );
+    }
+
+    /**
+     * Снимок текущего состояния книги; заявки в снимок не копируются, а становятся общими
+     * с книгой до их изменения, поэтому снимок можно записывать в другом потоке,
+     * продолжая изменять книгу
+     *
+     * @param sequence Номер последнего события журнала, учтенного в книге
+     *
+     * @return Снимок книги
+     */
+    BookSnapshot snapshot(long sequence) {
+        return new BookSnapshot(sequence, MIN_PRICE, buyVolumes.toArray(), sellLevelVolumes.clone(), orders.share());
+    }
+
+    private void changeVolume(Bid.BidType type, long price, long delta) {
+        int level = (int) (price - MIN_PRICE);
+        if (type == Bid.BidType.B) {
+            buyVolumes.add(level, delta);
+            return;
+        }
+
+        long volume = sellLevelVolumes[level];
+        sellLevelVolumes[level] = volume + delta;
+        sellVolumes.add(level, delta);
+        if (volume == 0) {
+            sellLevels.add(level, 1);
+            sellLevelIndexes.add(level, level);
+        }
+        else if (volume + delta == 0) {
+            sellLevels.add(level, -1);
+            sellLevelIndexes.add(level, -level);
+        }
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= orders.size()) {
+            throw new IllegalArgumentException("Unknown bid " + id);
+        }
+    }
+
+    private static void checkBid(int amount, long price) {
+        if (amount < MIN_AMOUNT || amount > MAX_AMOUNT) {
+            throw new IllegalArgumentException("Amount is out of range: " + amount);
+        }
+        if (price < MIN_PRICE || price > MAX_PRICE) {
+            throw new IllegalArgumentException("Price is out of range: " + price);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.moex;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Генератор входных данных аукциона произвольного объема: строки формируются
+ * по одной и сразу записываются в поток, поэтому объем памяти не зависит от количества строк.
+ *
+ * Генерация детерминирована: при одинаковых параметрах и зерне результат совпадает побайтово.
+ * Настраиваются распределения цены и количества, доля заявок на покупку и доля
+ * некорректных строк, которые должны отбрасываться {@link ParseBidFunction}.
+ *
+ * Запуск из командной строки (параметры в виде {@code ключ=значение}, все кроме файла необязательны):
+ *
+ * <pre>
+ * java -cp moex-case.jar com.moex.OrderFlowGenerator orders.txt lines=100000000 seed=1 prices=NORMAL
+ *     referencePrice=5050 spread=500 amounts=UNIFORM buyShare=0.5 malformedShare=0.001
+ * </pre>
+ *
+ * @author Alexey Prudnikov
+ */
+public final class OrderFlowGenerator {
+
+    /**
+     * Распределение цены заявки относительно опорной цены
+     */
+    public enum PriceDistribution {
+        /**
+         * Равномерное на отрезке [опорная цена - разброс, опорная цена + разброс]
+         */
+        UNIFORM,
+        /**
+         * Нормальное с центром в опорной цене и стандартным отклонением, равным разбросу
+         */
+        NORMAL,
+        /**
+         * Смесь двух нормальных распределений с центрами на расстоянии разброса от опорной цены
+         */
+        BIMODAL,
+        /**
+         * Распределение Коши с центром в опорной цене и параметром масштаба, равным разбросу
+         */
+        HEAVY_TAILED
+    }
+
+    /**
+     * Распределение количества ценных бумаг в заявке
+     */
+    public enum AmountDistribution {
+        /**
+         * Равномерное на всем допустимом диапазоне
+         */
+        UNIFORM,
+        /**
+         * Экспоненциальное: мелкие заявки встречаются значительно чаще крупных
+         */
+        EXPONENTIAL,
+        /**
+         * Равномерное среди количеств, кратных лоту из 10 бумаг
+         */
+        ROUND_LOTS
+    }
+
+    private static final int MIN_AMOUNT = ParseBidFunction.ACCEPTABLE_AMOUNT.getMinimum();
+    private static final int MAX_AMOUNT = ParseBidFunction.ACCEPTABLE_AMOUNT.getMaximum();
+    private static final long MIN_PRICE = ParseBidFunction.ACCEPTABLE_PRICE.getMinimum();
+    private static final long MAX_PRICE = ParseBidFunction.ACCEPTABLE_PRICE.getMaximum();
+
+    private static final double EXPONENTIAL_MEAN_AMOUNT = 100;
+    private static final int ROUND_LOT = 10;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    // строки, которые ParseBidFunction гарантированно отбрасывает
+    private static final byte[][] MALFORMED_LINES = toBytes(
+        "", "B", "B 10", "X 10 10.00", "B 0 10.00", "S 1001 10.00", "B 10 0.99", "S 10 100.01",
+        "B 10 10.00 10", "B ten 10.00", "S 10 10,00", " B 10 10.00"
+    );
+
+    private final long seed;
+    private PriceDistribution priceDistribution = PriceDistribution.NORMAL;
+    private long referencePrice = (MIN_PRICE + MAX_PRICE) / 2;
+    private long spread = (MAX_PRICE - MIN_PRICE) / 10;
+    private AmountDistribution amountDistribution = AmountDistribution.UNIFORM;
+    private double buyShare = 0.5;
+    private double malformedShare;
+
+    /**
+     * @param seed Зерно генератора случайных чисел
+     */
+    public OrderFlowGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public OrderFlowGenerator withPriceDistribution(PriceDistribution priceDistribution) {
+        this.priceDistribution = priceDistribution;
+        return this;
+    }
+
+    /**
+     * @param referencePrice Опорная цена в копейках
+     * @param spread Разброс цены в копейках (смысл зависит от {@link PriceDistribution})
+     */
+    public OrderFlowGenerator withPrices(long referencePrice, long spread) {
+        if (referencePrice < MIN_PRICE || referencePrice > MAX_PRICE || spread <= 0) {
+            throw new IllegalArgumentException("Invalid reference price or spread: " + referencePrice + ", " + spread);
+        }
+        this.referencePrice = referencePrice;
+        this.spread = spread;
+        return this;
+    }
+
+    public OrderFlowGenerator withAmountDistribution(AmountDistribution amountDistribution) {
+        this.amountDistribution = amountDistribution;
+        return this;
+    }
+
+    /**
+     * @param buyShare Доля заявок на покупку среди корректных заявок, от 0 до 1
+     */
+    public OrderFlowGenerator withBuyShare(double buyShare) {
+        checkShare(buyShare);
+        this.buyShare = buyShare;
+        return this;
+    }
+
+    /**
+     * @param malformedShare Доля некорректных строк, от 0 до 1
+     */
+    public OrderFlowGenerator withMalformedShare(double malformedShare) {
+        checkShare(malformedShare);
+        this.malformedShare = malformedShare;
+        return this;
+    }
+
+    /**
+     * Генерация строк с записью в поток
+     *
+     * @param out Поток для записи (не закрывается)
+     * @param lines Количество строк
+     *
+     * @return Количество корректных заявок среди записанных строк
+     *
+     * @throws IOException Ошибка записи в поток
+     */
+    public long generate(OutputStream out, long lines) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int position = 0;
+        long validLines = 0;
+
+        for (long i = 0; i < lines; i++) {
+            if (buffer.length - position < 64) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+
+            if (malformedShare > 0 && random.nextDouble() < malformedShare) {
+                byte[] line = MALFORMED_LINES[random.nextInt(MALFORMED_LINES.length)];
+                System.arraycopy(line, 0, buffer, position, line.length);
+                position += line.length;
+            }
+            else {
+                buffer[position++] = (byte) (random.nextDouble() < buyShare ? 'B' : 'S');
+                buffer[position++] = ' ';
+                position = writeNumber(buffer, position, nextAmount(random));
+                buffer[position++] = ' ';
+                long price = nextPrice(random);
+                position = writeNumber(buffer, position, price / 100);
+                buffer[position++] = '.';
+                buffer[position++] = (byte) ('0' + price / 10 % 10);
+                buffer[position++] = (byte) ('0' + price % 10);
+                validLines++;
+            }
+            buffer[position++] = '\n';
+        }
+
+        out.write(buffer, 0, position);
+        out.flush();
+        return validLines;
+    }
+
+    /**
+     * Генерация строк с записью в файл
+     *
+     * @param file Путь к файлу (существующий файл перезаписывается)
+     * @param lines Количество строк
+     *
+     * @return Количество корректных заявок среди записанных строк
+     *
+     * @throws IOException Ошибка записи в файл
+     */
+    public long generate(Path file, long lines) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE)) {
+            return generate(out, lines);
+        }
+    }
+
+    private long nextPrice(SplittableRandom random) {
+        while (true) {
+            double price;
+            switch (priceDistribution) {
+                case UNIFORM:
+                    price = referencePrice - spread + random.nextDouble() * (2 * spread + 1);
+                    break;
+                case NORMAL:
+                    price = referencePrice + nextGaussian(random) * spread;
+                    break;
+                case BIMODAL:
+                    price = referencePrice + (random.nextBoolean() ? spread : -spread) + nextGaussian(random) * spread / 2;
+                    break;
+                case HEAVY_TAILED:
+                    price = referencePrice + Math.tan(Math.PI * (random.nextDouble() - 0.5)) * spread;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown price distribution: " + priceDistribution);
+            }
+            // цены вне допустимого диапазона генерируются заново, чтобы не создавать пиков на его границах
+            long kopecks = (long) Math.floor(price);
+            if (kopecks >= MIN_PRICE && kopecks <= MAX_PRICE) {
+                return kopecks;
+            }
+        }
+    }
+
+    private int nextAmount(SplittableRandom random) {
+        switch (amountDistribution) {
+            case UNIFORM:
+                return MIN_AMOUNT + random.nextInt(MAX_AMOUNT - MIN_AMOUNT + 1);
+            case EXPONENTIAL:
+                double amount = -Math.log(1 - random.nextDouble()) * EXPONENTIAL_MEAN_AMOUNT;
+                return (int) Math.min(MAX_AMOUNT, MIN_AMOUNT + (long) amount);
+            case ROUND_LOTS:
+                return ROUND_LOT * (1 + random.nextInt(MAX_AMOUNT / ROUND_LOT));
+            default:
+                throw new IllegalStateException("Unknown amount distribution: " + amountDistribution);
+        }
+    }
+
+    /**
+     * Стандартное нормальное распределение (преобразование Бокса - Мюллера)
+     */
+    private static double nextGaussian(SplittableRandom random) {
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static int writeNumber(byte[] buffer, int position, long value) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + digits;
+    }
+
+    private static void checkShare(double share) {
+        if (share < 0 || share > 1) {
+            throw new IllegalArgumentException("Share must be between 0 and 1: " + share);
+        }
+    }
+
+    private static byte[][] toBytes(String... lines) {
+        byte[][] result = new byte[lines.length][];
+        for (int i = 0; i < lines.length; i++) {
+            result[i] = lines[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: OrderFlowGenerator <file> [lines=N] [seed=N] [prices=UNIFORM|NORMAL|BIMODAL|HEAVY_TAILED]"
+                + " [referencePrice=KOPECKS] [spread=KOPECKS] [amounts=UNIFORM|EXPONENTIAL|ROUND_LOTS]"
+                + " [buyShare=0..1] [malformedShare=0..1]");
+            System.exit(1);
+        }
+
+        long lines = 1_000_000;
+        long seed = 1;
+        String prices = PriceDistribution.NORMAL.name();
+        long referencePrice = (MIN_PRICE + MAX_PRICE) / 2;
+        long spread = (MAX_PRICE - MIN_PRICE) / 10;
+        String amounts = AmountDistribution.UNIFORM.name();
+        double buyShare = 0.5;
+        double malformedShare = 0;
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Option must look like key=value: " + args[i]);
+            }
+            switch (option[0]) {
+                case "lines":
+                    lines = Long.parseLong(option[1]);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(option[1]);
+                    break;
+                case "prices":
+                    prices = option[1].toUpperCase(Locale.ROOT);
+                    break;
+                case "referencePrice":
+                    referencePrice = Long.parseLong(option[1]);
+                    break;
+                case "spread":
+                    spread = Long.parseLong(option[1]);
+                    break;
+                case "amounts":
+                    amounts = option[1].toUpperCase(Locale.ROOT);
+                    break;
+                case "buyShare":
+                    buyShare = Double.parseDouble(option[1]);
+                    break;
+                case "malformedShare":
+                    malformedShare = Double.parseDouble(option[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option[0]);
+            }
+        }
+
+        long validLines = new OrderFlowGenerator(seed)
+            .withPriceDistribution(PriceDistribution.valueOf(prices))
+            .withPrices(referencePrice, spread)
+            .withAmountDistribution(AmountDistribution.valueOf(amounts))
+            .withBuyShare(buyShare)
+            .withMalformedShare(malformedShare)
+            .generate(Paths.get(args[0]), lines);
+        System.out.println(lines + " lines written, " + validLines + " valid bids");
+    }
+}
@@ -0,0 +1,460 @@
+package com.moex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Журнал событий книги заявок (write-ahead log): каждая принятая заявка, снятие и изменение
+ * заявки, а также проведение аукциона дописываются в файл, отображенный в память, и по журналу
+ * после сбоя восстанавливается состояние книги ({@link #replay(Path, Handler)}).
+ *
+ * Файл состоит из заголовка и записей фиксированной длины по 32 байта (little-endian):
+ *
+ * <pre>
+ * long sequence   порядковый номер события, начиная с 1
+ * byte kind       'B' / 'S' - заявка, 'X' - снятие, 'A' - изменение, 'U' - аукцион
+ * int id          идентификатор заявки для снятия и изменения
+ * int amount      количество ценных бумаг
+ * int checksum    контрольная сумма остальных полей
+ * long price      цена в копейках
+ * </pre>
+ *
+ * Файл расширяется участками по {@value #REGION_SIZE} байт, которые заранее отображаются в память,
+ * поэтому добавление события - это запись нескольких полей в память без системных вызовов.
+ * Записанное событие сразу попадает в страничный кэш и переживает аварийное завершение процесса;
+ * для защиты от сбоя операционной системы предназначен {@link #flush()}.
+ *
+ * Воспроизведение останавливается на первой записи с неверным номером или контрольной суммой
+ * (недописанная запись или незаполненная часть файла); при открытии журнала на запись новые
+ * события дописываются сразу после последней корректной записи. Запись события с номером n
+ * находится по фиксированному смещению, поэтому после снимка книги ({@link BookSnapshot})
+ * воспроизводятся только последующие события. Экземпляр не потокобезопасен.
+ *
+ * @author Alexey Prudnikov
+ */
+public final class OrderJournal implements Closeable {
+
+    /**
+     * Обработчик событий при воспроизведении журнала
+     */
+    public interface Handler {
+
+        void bid(long sequence, Bid.BidType type, int amount, long price);
+
+        void cancel(long sequence, int id);
+
+        void amend(long sequence, int id, int amount, long price);
+
+        void uncross(long sequence);
+    }
+
+    static final int MAGIC = 0x314A584D; // "MXJ1" в порядке little-endian
+    static final int VERSION = 1;
+    static final int RECORD_SIZE = 32;
+    static final int HEADER_SIZE = RECORD_SIZE;
+    static final long REGION_SIZE = 64L * 1024 * 1024;
+
+    static final byte CANCEL = 'X';
+    static final byte AMEND = 'A';
+    static final byte UNCROSS = 'U';
+
+    private static final int KIND_OFFSET = 8;
+    private static final int ID_OFFSET = 12;
+    private static final int AMOUNT_OFFSET = 16;
+    private static final int CHECKSUM_OFFSET = 20;
+    private static final int PRICE_OFFSET = 24;
+
+    private final FileChannel channel;
+    private final long regionSize;
+    private MappedByteBuffer region;
+    private long regionOffset;
+    private int position;
+    private long sequence;
+
+    /**
+     * Открытие журнала на запись; существующий журнал продолжается после последней корректной записи
+     *
+     * @param file Путь к файлу журнала
+     *
+     * @throws IOException Ошибка открытия файла или файл не является журналом
+     */
+    public OrderJournal(Path file) throws IOException {
+        this(file, REGION_SIZE, 0, null);
+    }
+
+    /**
+     * Открытие журнала на запись с воспроизведением событий после снимка книги ({@link BookSnapshot}):
+     * записи до события {@code afterSequence} не читаются, поэтому время открытия не зависит
+     * от длины журнала до снимка
+     *
+     * @param file Путь к файлу журнала
+     * @param afterSequence Номер последнего события, учтенного в снимке (0 - воспроизвести весь журнал)
+     * @param handler Обработчик событий после {@code afterSequence}
+     *
+     * @throws IOException Ошибка открытия файла, файл не является журналом или в нем нет события {@code afterSequence}
+     */
+    public OrderJournal(Path file, long afterSequence, Handler handler) throws IOException {
+        this(file, REGION_SIZE, afterSequence, handler);
+    }
+
+    /**
+     * @param file Путь к файлу журнала
+     * @param regionSize Размер отображаемого в память участка, кратный длине записи
+     */
+    OrderJournal(Path file, long regionSize) throws IOException {
+        this(file, regionSize, 0, null);
+    }
+
+    private OrderJournal(Path file, long regionSize, long afterSequence, Handler handler) throws IOException {
+        this.regionSize = regionSize;
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end = HEADER_SIZE;
+            if (exists) {
+                Replay replay = new Replay(channel, file, afterSequence, handler);
+                end = replay.end;
+                sequence = replay.sequence;
+            }
+            else if (afterSequence > 0) {
+                throw new IOException("Order journal " + file + " ends before event " + afterSequence);
+            }
+            // недописанные и устаревшие записи после последней корректной удаляются
+            channel.truncate(end);
+            map(end - end % regionSize);
+            position = (int) (end - regionOffset);
+            if (!exists) {
+                region.putInt(0, MAGIC).putInt(4, VERSION);
+            }
+        }
+        catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private void map(long offset) throws IOException {
+        region = channel.map(FileChannel.MapMode.READ_WRITE, offset, regionSize);
+        region.order(ByteOrder.LITTLE_ENDIAN);
+        regionOffset = offset;
+    }
+
+    /**
+     * @return Номер последнего записанного события (0, если журнал пуст)
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Запись принятой заявки
+     *
+     * @return Номер события
+     */
+    public long appendBid(Bid.BidType type, int amount, long price) throws IOException {
+        return append(type == Bid.BidType.B ? (byte) 'B' : (byte) 'S', 0, amount, price);
+    }
+
+    /**
+     * Запись снятия заявки
+     *
+     * @return Номер события
+     */
+    public long appendCancel(int id) throws IOException {
+        return append(CANCEL, id, 0, 0);
+    }
+
+    /**
+     * Запись изменения заявки
+     *
+     * @return Номер события
+     */
+    public long appendAmend(int id, int amount, long price) throws IOException {
+        return append(AMEND, id, amount, price);
+    }
+
+    /**
+     * Запись проведения аукциона: книга очищается для следующего аукциона
+     *
+     * @return Номер события
+     */
+    public long appendUncross() throws IOException {
+        return append(UNCROSS, 0, 0, 0);
+    }
+
+    private long append(byte kind, int id, int amount, long price) throws IOException {
+        if (position == regionSize) {
+            region.force();
+            map(regionOffset + regionSize);
+            position = 0;
+        }
+        long next = sequence + 1;
+        region.putLong(position, next);
+        region.put(position + KIND_OFFSET, kind);
+        region.putInt(position + ID_OFFSET, id);
+        region.putInt(position + AMOUNT_OFFSET, amount);
+        region.putLong(position + PRICE_OFFSET, price);
+        // контрольная сумма записывается последней: по ней определяется, что запись дописана
+        region.putInt(position + CHECKSUM_OFFSET, checksum(next, kind, id, amount, price));
+        position += RECORD_SIZE;
+        sequence = next;
+        return next;
+    }
+
+    /**
+     * Сброс записанных событий на диск
+     */
+    public void flush() {
+        region.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Контрольная сумма полей записи (перемешивание в духе MurmurHash3)
+     */
+    static int checksum(long sequence, byte kind, int id, int amount, long price) {
+        long hash = sequence * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ kind ^ (long) id << 8) * 0xC2B2AE3D27D4EB4FL;
+        hash = (hash ^ amount ^ price << 20) * 0x165667B19E3779F9L;
+        hash ^= hash >>> 29;
+        return (int) (hash ^ hash >>> 32);
+    }
+
+    /**
+     * Воспроизведение журнала
+     *
+     * @param file Путь к файлу журнала
+     * @param handler Обработчик событий
+     *
+     * @return Номер последнего корректного события (0, если журнал пуст)
+     *
+     * @throws IOException Ошибка чтения файла или файл не является журналом
+     */
+    public static long replay(Path file, Handler handler) throws IOException {
+        return replay(file, 0, handler);
+    }
+
+    /**
+     * Воспроизведение событий журнала после заданного
+     *
+     * @param file Путь к файлу журнала
+     * @param afterSequence Номер события, после которого начинается воспроизведение
+     * @param handler Обработчик событий
+     *
+     * @return Номер последнего корректного события
+     *
+     * @throws IOException Ошибка чтения файла, файл не является журналом или в нем нет события {@code afterSequence}
+     */
+    public static long replay(Path file, long afterSequence, Handler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new Replay(channel, file, afterSequence, handler).sequence;
+        }
+    }
+
+    /**
+     * Восстановление инкрементальной книги заявок по журналу: воспроизводятся события
+     * после последнего проведенного аукциона
+     *
+     * @param file Путь к файлу журнала
+     *
+     * @return Восстановленная книга
+     *
+     * @throws IOException Ошибка чтения файла или файл не является журналом
+     */
+    public static OrderBook recoverBook(Path file) throws IOException {
+        BookRecovery recovery = new BookRecovery(new OrderBook());
+        replay(file, recovery);
+        return recovery.getBook();
+    }
+
+    /**
+     * Восстановление инкрементальной книги заявок из снимка и событий журнала после него
+     *
+     * @param file Путь к файлу журнала
+     * @param snapshotFile Путь к файлу снимка книги ({@link BookSnapshot})
+     *
+     * @return Восстановленная книга
+     *
+     * @throws IOException Ошибка чтения файлов или снимок не соответствует журналу
+     */
+    public static OrderBook recoverBook(Path file, Path snapshotFile) throws IOException {
+        BookSnapshot snapshot = BookSnapshot.read(snapshotFile);
+        BookRecovery recovery = new BookRecovery(snapshot.toBook());
+        replay(file, snapshot.getSequence(), recovery);
+        return recovery.getBook();
+    }
+
+    /**
+     * Восстановление заявок по журналу для {@link DiscreteAuction}: воспроизводятся события после
+     * последнего проведенного аукциона, у снятых заявок количество становится равным 0
+     *
+     * @param file Путь к файлу журнала
+     *
+     * @return Заявки в порядке поступления (индекс заявки совпадает с ее идентификатором)
+     *
+     * @throws IOException Ошибка чтения файла или файл не является журналом
+     */
+    static BidColumns recoverBids(Path file) throws IOException {
+        BidColumns[] bids = {new BidColumns()};
+        replay(file, new Handler() {
+            @Override
+            public void bid(long sequence, Bid.BidType type, int amount, long price) {
+                bids[0].add(type, amount, price);
+            }
+
+            @Override
+            public void cancel(long sequence, int id) {
+                bids[0].setAmount(id, 0);
+            }
+
+            @Override
+            public void amend(long sequence, int id, int amount, long price) {
+                bids[0].setAmount(id, amount);
+                bids[0].setPrice(id, price);
+            }
+
+            @Override
+            public void uncross(long sequence) {
+                bids[0] = new BidColumns();
+            }
+        });
+        return bids[0];
+    }
+
+    /**
+     * Применение событий журнала к книге заявок; аукцион очищает книгу
+     */
+    static final class BookRecovery implements Handler {
+
+        private OrderBook book;
+
+        BookRecovery(OrderBook book) {
+            this.book = book;
+        }
+
+        OrderBook getBook() {
+            return book;
+        }
+
+        @Override
+        public void bid(long sequence, Bid.BidType type, int amount, long price) {
+            book.addBid(type, amount, price);
+        }
+
+        @Override
+        public void cancel(long sequence, int id) {
+            book.cancelBid(id);
+        }
+
+        @Override
+        public void amend(long sequence, int id, int amount, long price) {
+            book.amendBid(id, amount, price);
+        }
+
+        @Override
+        public void uncross(long sequence) {
+            book = new OrderBook();
+        }
+    }
+
+    /**
+     * Проход по корректным записям журнала участками, отображенными в память
+     */
+    private static final class Replay {
+
+        private final long afterSequence;
+        private long end;
+        private long sequence;
+
+        /**
+         * Проход начинается с записи события {@code afterSequence}: она проверяется, но не передается обработчику
+         */
+        private Replay(FileChannel channel, Path file, long afterSequence, Handler handler) throws IOException {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (size < HEADER_SIZE || channel.read(header, 0) != HEADER_SIZE
+                || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not an order journal: " + file);
+            }
+
+            this.afterSequence = afterSequence;
+            long start = HEADER_SIZE;
+            if (afterSequence > 0) {
+                sequence = afterSequence - 1;
+                start += sequence * RECORD_SIZE;
+            }
+            end = start;
+            scan(channel, start, size, handler);
+            if (sequence < afterSequence) {
+                throw new IOException("Order journal " + file + " ends before event " + afterSequence);
+            }
+        }
+
+        private void scan(FileChannel channel, long start, long size, Handler handler) throws IOException {
+            for (long offset = start; offset < size; offset += REGION_SIZE) {
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(REGION_SIZE, size - offset));
+                data.order(ByteOrder.LITTLE_ENDIAN);
+                for (int position = 0; position + RECORD_SIZE <= data.limit(); position += RECORD_SIZE) {
+                    if (!replay(data, position, handler)) {
+                        return;
+                    }
+                    end = offset + position + RECORD_SIZE;
+                }
+            }
+        }
+
+        private boolean replay(ByteBuffer data, int position, Handler handler) {
+            long recordSequence = data.getLong(position);
+            byte kind = data.get(position + KIND_OFFSET);
+            int id = data.getInt(position + ID_OFFSET);
+            int amount = data.getInt(position + AMOUNT_OFFSET);
+            long price = data.getLong(position + PRICE_OFFSET);
+            if (recordSequence != sequence + 1
+                || data.getInt(position + CHECKSUM_OFFSET) != checksum(recordSequence, kind, id, amount, price)) {
+                return false;
+            }
+
+            if (kind != 'B' && kind != 'S' && kind != CANCEL && kind != AMEND && kind != UNCROSS) {
+                return false;
+            }
+
+            if (handler != null && recordSequence > afterSequence) {
+                switch (kind) {
+                    case 'B':
+                        handler.bid(recordSequence, Bid.BidType.B, amount, price);
+                        break;
+                    case 'S':
+                        handler.bid(recordSequence, Bid.BidType.S, amount, price);
+                        break;
+                    case CANCEL:
+                        handler.cancel(recordSequence, id);
+                        break;
+                    case AMEND:
+                        handler.amend(recordSequence, id, amount, price);
+                        break;
+                    default:
+                        handler.uncross(recordSequence);
+                        break;
+                }
+            }
+            sequence = recordSequence;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.moex;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Параллельное чтение файла с заявками в книгу {@link PriceLevelBook}:
+ * - файл разбивается на участки, границы которых выровнены по символу перевода строки;
+ * - каждый участок отображается в память ({@link FileChannel#map}) и разбирается в отдельной
+ *   задаче {@link ForkJoinPool} в собственную книгу;
+ * - книги участков объединяются в порядке следования участков в файле.
+ *
+ * @author Alexey Prudnikov
+ */
+public final class ParallelFileReader {
+
+    // участки меньше этого размера не имеет смысла разбирать параллельно
+    private static final long MIN_CHUNK_SIZE = 4L * 1024 * 1024;
+    // размер отображаемого в память участка ограничен возможностями MappedByteBuffer
+    private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+    private static final int ALIGNMENT_BUFFER_SIZE = 4 * 1024;
+
+    private final ForkJoinPool pool;
+    private final InstrumentSpec spec;
+    private long lineCount;
+
+    public ParallelFileReader() {
+        this(InstrumentSpec.DEFAULT);
+    }
+
+    /**
+     * @param spec Шаг цены и допустимые диапазоны цены и количества
+     */
+    public ParallelFileReader(InstrumentSpec spec) {
+        this(ForkJoinPool.commonPool(), spec);
+    }
+
+    /**
+     * @param pool Пул, в котором выполняется разбор участков файла
+     * @param spec Шаг цены и допустимые диапазоны цены и количества
+     */
+    public ParallelFileReader(ForkJoinPool pool, InstrumentSpec spec) {
+        this.pool = pool;
+        this.spec = spec;
+    }
+
+    /**
+     * Чтение файла с заявками
+     *
+     * @param dataSource Путь к файлу с входными данными
+     *
+     * @return Книга с объемами заявок по ценовым уровням
+     *
+     * @throws IOException Ошибка чтения файла
+     */
+    public PriceLevelBook read(Path dataSource) throws IOException {
+        try (FileChannel channel = FileChannel.open(dataSource, StandardOpenOption.READ)) {
+            long[] bounds = split(channel);
+
+            List<Callable<ChunkResult>> tasks = new ArrayList<>(bounds.length - 1);
+            for (int i = 0; i < bounds.length - 1; i++) {
+                long from = bounds[i];
+                long to = bounds[i + 1];
+                tasks.add(() -> parseChunk(channel, from, to));
+            }
+
+            PriceLevelBook book = new PriceLevelBook(spec);
+            long lines = 0;
+            for (Future<ChunkResult> result : pool.invokeAll(tasks)) {
+                ChunkResult chunk = result.get();
+                book.merge(chunk.book);
+                lines += chunk.lines;
+            }
+            lineCount = lines;
+            return book;
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) ex.getCause()).getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /**
+     * @return Количество строк, прочитанных последним вызовом {@link #read(Path)}
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Разбиение файла на участки, каждый из которых (кроме первого) начинается сразу после символа '\n'
+     *
+     * @param channel Файл с входными данными
+     *
+     * @return Границы участков: участок i занимает байты с bounds[i] (включительно) по bounds[i + 1]
+     */
+    private long[] split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkCount = Math.max(
+            Math.min(pool.getParallelism(), size / MIN_CHUNK_SIZE),
+            (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE
+        );
+        chunkCount = Math.max(chunkCount, 1);
+
+        long[] bounds = new long[(int) chunkCount + 1];
+        bounds[bounds.length - 1] = size;
+        for (int i = 1; i < chunkCount; i++) {
+            bounds[i] = Math.max(nextLineStart(channel, size / chunkCount * i), bounds[i - 1]);
+        }
+        return bounds;
+    }
+
+    /**
+     * Поиск начала строки, следующей за строкой, в которой находится байт с позицией {@code position - 1}
+     */
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ALIGNMENT_BUFFER_SIZE);
+        long offset = position - 1;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    private ChunkResult parseChunk(FileChannel channel, long from, long to) {
+        PriceLevelBook book = new PriceLevelBook(spec);
+        if (from == to) {
+            return new ChunkResult(book, 0);
+        }
+        try {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+            long lines = new BidParser(spec).parse(data, book);
+            return new ChunkResult(book, lines);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Результат разбора одного участка файла
+     */
+    private static final class ChunkResult {
+
+        private final PriceLevelBook book;
+        private final long lines;
+
+        private ChunkResult(PriceLevelBook book, long lines) {
+            this.book = book;
+            this.lines = lines;
+        }
+    }
+}
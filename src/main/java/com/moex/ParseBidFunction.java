@@ -6,12 +6,12 @@ import java.math.BigDecimal;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 
-import static com.moex.App.ONE_HUNDRED;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 /**
  * Разбор строки, описывающей заявку на аукцион;
- * строки, не соответствующие заданному формату,
+ * строки, не соответствующие заданному формату
+ * или параметрам торгов ({@link InstrumentSpec}),
  * пропускаются
  *
  * @author Alexey Prudnikov
@@ -24,8 +24,21 @@ public final class ParseBidFunction implements Function<String, Bid> {
     private static final byte BID_PRICE_POSITION = 2;
     private static final byte SPLIT_LINE_SIZE = 3;
 
-    private static final Range<Integer> ACCEPTABLE_AMOUNT = Range.between(1, 1_000);
-    private static final Range<Long> ACCEPTABLE_PRICE = Range.between(100L, 10_000L);
+    static final Range<Integer> ACCEPTABLE_AMOUNT = Range.between(1, 1_000);
+    static final Range<Long> ACCEPTABLE_PRICE = Range.between(100L, 10_000L);
+
+    private final InstrumentSpec spec;
+
+    public ParseBidFunction() {
+        this(InstrumentSpec.DEFAULT);
+    }
+
+    /**
+     * @param spec Шаг цены и допустимые диапазоны цены и количества
+     */
+    public ParseBidFunction(InstrumentSpec spec) {
+        this.spec = spec;
+    }
 
     @Override
     public Bid apply(String line) {
@@ -40,9 +53,9 @@ public final class ParseBidFunction implements Function<String, Bid> {
 
         try {
             int amount = Integer.parseInt(values[BID_AMOUNT_POSITION]);
-            long price = ONE_HUNDRED.multiply(new BigDecimal(values[BID_PRICE_POSITION])).longValue();
+            long price = new BigDecimal(values[BID_PRICE_POSITION]).movePointRight(spec.getScale()).longValue();
 
-            if (ACCEPTABLE_AMOUNT.contains(amount) && ACCEPTABLE_PRICE.contains(price)) {
+            if (spec.accepts(amount, price)) {
                 return new Bid(
                     Bid.BidType.valueOf(values[BID_TYPE_POSITION]),
                     amount,
@@ -0,0 +1,51 @@
+package com.moex;
+
+import java.nio.charset.StandardCharsets;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR: отброшенная строка входных данных. Записывается не каждая строка, а первая
+ * и затем каждая {@link #SAMPLE_INTERVAL}-я, чтобы поток некорректных строк не перегружал запись
+ *
+ * @author Alexey Prudnikov
+ */
+@Name("com.moex.ParseReject")
+@Label("Parse Reject")
+@Description("Sampled input line rejected by the bid parser")
+@Category({"MOEX", "Auction"})
+@StackTrace(false)
+final class ParseRejectEvent extends Event {
+
+    static final int SAMPLE_INTERVAL = 1024;
+    private static final int MAX_LINE_LENGTH = 128;
+
+    @Label("Line")
+    String line;
+
+    @Label("Rejected Lines")
+    @Description("Total rejected lines so far, including this one")
+    long rejectedCount;
+
+    /**
+     * Запись события для выборки отброшенных строк
+     *
+     * @param rejectedCount Количество отброшенных строк с учетом этой
+     */
+    static void sample(byte[] buf, int from, int to, long rejectedCount) {
+        if (rejectedCount % SAMPLE_INTERVAL != 1) {
+            return;
+        }
+        ParseRejectEvent event = new ParseRejectEvent();
+        if (event.shouldCommit()) {
+            event.line = new String(buf, from, Math.min(to - from, MAX_LINE_LENGTH), StandardCharsets.ISO_8859_1);
+            event.rejectedCount = rejectedCount;
+            event.commit();
+        }
+    }
+}
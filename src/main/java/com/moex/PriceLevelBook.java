@@ -0,0 +1,252 @@
+package com.moex;
+
+import java.util.Arrays;
+
+/**
+ * Книга заявок в виде гистограммы: объемы заявок на покупку и продажу накапливаются
+ * по ценовым уровням сетки цен ({@link InstrumentSpec}), поэтому сортировка заявок и деревья
+ * поиска не нужны, а сложность определения оптимальной цены составляет O(n + L),
+ * где L - количество ценовых уровней.
+ *
+ * Способ хранения объемов выбирается по количеству уровней сетки ({@link InstrumentSpec#isDense()}):
+ * - плотный: два массива, индексированных ценовым уровнем (для цен по умолчанию
+ *   {@link ParseBidFunction#ACCEPTABLE_PRICE} - 9 901 уровень с шагом в одну копейку);
+ * - разреженный (мелкий шаг цены и широкий диапазон): только непустые уровни в хеш-таблице
+ *   с открытой адресацией на примитивных массивах, которые перед определением цены
+ *   упорядочиваются по уровню.
+ * В обоих случаях определение цены выполняется одним и тем же кодом над упорядоченными
+ * по цене массивами объемов ({@link #match(long[], long[], long[], int)}).
+ *
+ * @author Alexey Prudnikov
+ */
+public final class PriceLevelBook implements BidConsumer {
+
+    static final long MIN_PRICE = ParseBidFunction.ACCEPTABLE_PRICE.getMinimum();
+    static final long MAX_PRICE = ParseBidFunction.ACCEPTABLE_PRICE.getMaximum();
+    static final int LEVELS = (int) (MAX_PRICE - MIN_PRICE + 1);
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private final InstrumentSpec spec;
+    private final boolean dense;
+
+    // плотный способ: объемы по номеру уровня; разреженный: объемы по ячейке хеш-таблицы
+    private long[] buyVolumes;
+    private long[] sellVolumes;
+    // разреженный способ: номер уровня + 1 в ячейке хеш-таблицы (0 - пустая ячейка)
+    private long[] keys;
+    private int size;
+
+    private long bidCount;
+
+    public PriceLevelBook() {
+        this(InstrumentSpec.DEFAULT);
+    }
+
+    /**
+     * @param spec Сетка цен, по уровням которой накапливаются объемы
+     */
+    public PriceLevelBook(InstrumentSpec spec) {
+        this.spec = spec;
+        this.dense = spec.isDense();
+        int capacity = dense ? (int) spec.getLevelCount() : INITIAL_CAPACITY;
+        this.buyVolumes = new long[capacity];
+        this.sellVolumes = new long[capacity];
+        this.keys = dense ? null : new long[capacity];
+    }
+
+    @Override
+    public void accept(Bid.BidType type, int amount, long price) {
+        bidCount++;
+        long level = spec.level(price);
+        int index = dense ? (int) level : slot(level);
+        if (type == Bid.BidType.B) {
+            buyVolumes[index] += amount;
+        }
+        else {
+            sellVolumes[index] += amount;
+        }
+    }
+
+    /**
+     * Ячейка хеш-таблицы для уровня (линейное пробирование); если уровня в таблице нет, он добавляется
+     */
+    private int slot(long level) {
+        int mask = keys.length - 1;
+        long key = level + 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - Integer.bitCount(mask)));
+        while (keys[slot] != key) {
+            if (keys[slot] == 0) {
+                if (2 * (size + 1) > keys.length) {
+                    grow();
+                    return slot(level);
+                }
+                keys[slot] = key;
+                size++;
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Увеличение хеш-таблицы вдвое с переносом непустых уровней
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldBuyVolumes = buyVolumes;
+        long[] oldSellVolumes = sellVolumes;
+        keys = new long[oldKeys.length * 2];
+        buyVolumes = new long[keys.length];
+        sellVolumes = new long[keys.length];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i] - 1);
+                buyVolumes[slot] = oldBuyVolumes[i];
+                sellVolumes[slot] = oldSellVolumes[i];
+            }
+        }
+    }
+
+    /**
+     * Очистка книги для повторного использования
+     */
+    public void clear() {
+        Arrays.fill(buyVolumes, 0);
+        Arrays.fill(sellVolumes, 0);
+        if (!dense) {
+            Arrays.fill(keys, 0);
+            size = 0;
+        }
+        bidCount = 0;
+    }
+
+    /**
+     * @return Сетка цен книги
+     */
+    public InstrumentSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * @return Количество заявок, добавленных в книгу
+     */
+    public long getBidCount() {
+        return bidCount;
+    }
+
+    /**
+     * @return Количество непустых ценовых уровней покупки и продажи
+     */
+    public int levelCount() {
+        int levels = 0;
+        for (int i = 0; i < buyVolumes.length; i++) {
+            levels += (buyVolumes[i] != 0 ? 1 : 0) + (sellVolumes[i] != 0 ? 1 : 0);
+        }
+        return levels;
+    }
+
+    /**
+     * Добавление в книгу объемов другой книги (например, собранной по другому участку входных данных)
+     *
+     * @param other Книга с той же сеткой цен, объемы которой нужно добавить
+     *
+     * @throws IllegalArgumentException Сетки цен книг различаются
+     */
+    public void merge(PriceLevelBook other) {
+        if (!spec.equals(other.spec)) {
+            throw new IllegalArgumentException("Cannot merge books with different instrument specs: " + spec + ", " + other.spec);
+        }
+        if (dense) {
+            for (int i = 0; i < buyVolumes.length; i++) {
+                buyVolumes[i] += other.buyVolumes[i];
+                sellVolumes[i] += other.sellVolumes[i];
+            }
+        }
+        else {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] != 0) {
+                    int slot = slot(other.keys[i] - 1);
+                    buyVolumes[slot] += other.buyVolumes[i];
+                    sellVolumes[slot] += other.sellVolumes[i];
+                }
+            }
+        }
+        bidCount += other.bidCount;
+    }
+
+    /**
+     * Определение оптимальной цены, результат совпадает с {@link DiscreteAuction#makeDeal()};
+     * в плотном способе массивы объемов уже упорядочены по цене, в разреженном непустые уровни
+     * хеш-таблицы предварительно сортируются
+     *
+     * @return Результат подбора оптимальной цены в виде экземпляра объекта {@link DealResult}
+     */
+    public DealResult match() {
+        if (dense) {
+            return match(null, buyVolumes, sellVolumes, buyVolumes.length);
+        }
+
+        long[] levels = new long[size];
+        int count = 0;
+        for (long key : keys) {
+            if (key != 0) {
+                levels[count++] = key - 1;
+            }
+        }
+        Arrays.sort(levels);
+        long[] buy = new long[count];
+        long[] sell = new long[count];
+        for (int i = 0; i < count; i++) {
+            int slot = slot(levels[i]);
+            buy[i] = buyVolumes[slot];
+            sell[i] = sellVolumes[slot];
+        }
+        return match(levels, buy, sell, count);
+    }
+
+    /**
+     * Определение оптимальной цены по уровням, упорядоченным по возрастанию цены:
+     * - первым проходом (по возрастанию цены) вычисляется кумулятивный объем продаж;
+     * - вторым проходом (по убыванию цены) накапливается кумулятивный объем покупок и
+     *   запоминается ближайшая сверху цена покупки; для каждой цены продажи, у которой
+     *   есть такая цена покупки, вычисляется объем сделки.
+     *
+     * @param levels Номера уровней ({@code null}, если номер уровня совпадает с индексом)
+     * @param buyVolumes Объемы покупок по уровням
+     * @param sellVolumes Объемы продаж по уровням
+     * @param count Количество уровней
+     */
+    private DealResult match(long[] levels, long[] buyVolumes, long[] sellVolumes, int count) {
+        long[] cumulativeSellVolumes = new long[count];
+        CurveScan.prefixSums(sellVolumes, cumulativeSellVolumes, count);
+
+        long bestAmount = 0;
+        OptimalPrices optimalPrices = new OptimalPrices();
+        long buyVolume = 0;
+        long buyPrice = -1;
+        for (int i = count - 1; i >= 0; i--) {
+            if (buyVolumes[i] != 0) {
+                buyVolume += buyVolumes[i];
+                buyPrice = spec.price(levels == null ? i : levels[i]);
+            }
+            if (sellVolumes[i] == 0 || buyPrice < 0) {
+                // на этом уровне нет продаж, либо продажа по такой цене никогда не будет исполнена
+                continue;
+            }
+
+            long dealAmount = Math.min(buyVolume, cumulativeSellVolumes[i]);
+            if (dealAmount >= bestAmount) {
+                if (dealAmount > bestAmount) {
+                    optimalPrices.clear();
+                    bestAmount = dealAmount;
+                }
+                optimalPrices.add(spec.price(levels == null ? i : levels[i]), buyPrice);
+            }
+        }
+
+        return optimalPrices.toDeal(bestAmount, spec.getScale());
+    }
+}
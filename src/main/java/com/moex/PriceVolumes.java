@@ -0,0 +1,65 @@
+package com.moex;
+
+import java.util.Arrays;
+
+/**
+ * Объемы по ценовым уровням одной стороны книги заявок: пары (цена, объем) в примитивных
+ * массивах, упорядоченные так, как они были добавлены. В зависимости от этапа аукциона объем
+ * уровня - это либо суммарное количество бумаг в заявках с этой ценой, либо кумулятивный объем.
+ *
+ * @author Alexey Prudnikov
+ */
+final class PriceVolumes {
+
+    private final long[] prices;
+    private final long[] volumes;
+    private int size;
+
+    /**
+     * @param capacity Максимальное количество ценовых уровней
+     */
+    PriceVolumes(int capacity) {
+        this.prices = new long[capacity];
+        this.volumes = new long[capacity];
+    }
+
+    private PriceVolumes(long[] prices, long[] volumes, int size) {
+        this.prices = prices;
+        this.volumes = volumes;
+        this.size = size;
+    }
+
+    void add(long price, long volume) {
+        prices[size] = price;
+        volumes[size] = volume;
+        size++;
+    }
+
+    /**
+     * Кумулятивные объемы: объем каждого уровня - сумма объемов этого и всех предыдущих уровней
+     * (для большого количества уровней вычисляется параллельно, см. {@link CurveScan})
+     *
+     * @return Новые объемы с теми же ценами
+     */
+    PriceVolumes cumulative() {
+        PriceVolumes result = new PriceVolumes(Arrays.copyOf(prices, size), new long[size], size);
+        CurveScan.prefixSums(volumes, result.volumes, size);
+        return result;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long getPrice(int index) {
+        return prices[index];
+    }
+
+    long getVolume(int index) {
+        return volumes[index];
+    }
+}
@@ -0,0 +1,98 @@
+package com.moex;
+
+import java.util.Arrays;
+
+/**
+ * Устойчивая поразрядная сортировка (LSD radix sort) индексов по неотрицательным целочисленным ключам.
+ *
+ * Ключ разбивается на разряды не более чем по {@value #MAX_DIGIT_BITS} бит, начиная с младшего;
+ * на каждом проходе индексы раскладываются подсчетом по значению текущего разряда, сохраняя
+ * порядок индексов с одинаковым разрядом. Количество проходов определяется наибольшим ключом,
+ * поэтому при небольшом диапазоне ключей (например, цены в копейках) сортировка выполняется
+ * за один проход подсчетом, а ее сложность линейна по количеству элементов.
+ * Очень короткие массивы сортируются вставками.
+ *
+ * @author Alexey Prudnikov
+ */
+final class RadixSort {
+
+    static final int MAX_DIGIT_BITS = 16;
+
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private RadixSort() {
+    }
+
+    /**
+     * Упорядочивание индексов по возрастанию ключей; индексы с равными ключами сохраняют
+     * исходный порядок
+     *
+     * @param indexes Индексы (переупорядочиваются)
+     * @param keys Ключи индексов, неотрицательные и не больше {@code maxKey} (переупорядочиваются вместе с индексами)
+     * @param count Количество элементов
+     * @param maxKey Наибольший ключ
+     */
+    static void sort(int[] indexes, long[] keys, int count, long maxKey) {
+        if (count < INSERTION_SORT_THRESHOLD) {
+            insertionSort(indexes, keys, count);
+            return;
+        }
+
+        int keyBits = Math.max(Long.SIZE - Long.numberOfLeadingZeros(maxKey), 1);
+        int passes = (keyBits + MAX_DIGIT_BITS - 1) / MAX_DIGIT_BITS;
+        // разряды одинаковой ширины: например, 20 бит сортируются двумя проходами по 10 бит
+        int digitBits = (keyBits + passes - 1) / passes;
+        int digitMask = (1 << digitBits) - 1;
+
+        int[] counts = new int[1 << digitBits];
+        int[] sourceIndexes = indexes;
+        long[] sourceKeys = keys;
+        int[] targetIndexes = new int[count];
+        long[] targetKeys = new long[count];
+        for (int pass = 0, shift = 0; pass < passes; pass++, shift += digitBits) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < count; i++) {
+                counts[(int) (sourceKeys[i] >>> shift) & digitMask]++;
+            }
+            // позиция первого элемента с каждым значением разряда
+            int position = 0;
+            for (int digit = 0; digit < counts.length; digit++) {
+                int digitCount = counts[digit];
+                counts[digit] = position;
+                position += digitCount;
+            }
+            for (int i = 0; i < count; i++) {
+                int target = counts[(int) (sourceKeys[i] >>> shift) & digitMask]++;
+                targetIndexes[target] = sourceIndexes[i];
+                targetKeys[target] = sourceKeys[i];
+            }
+
+            int[] indexesBuffer = sourceIndexes;
+            sourceIndexes = targetIndexes;
+            targetIndexes = indexesBuffer;
+            long[] keysBuffer = sourceKeys;
+            sourceKeys = targetKeys;
+            targetKeys = keysBuffer;
+        }
+
+        if (sourceIndexes != indexes) {
+            System.arraycopy(sourceIndexes, 0, indexes, 0, count);
+            System.arraycopy(sourceKeys, 0, keys, 0, count);
+        }
+    }
+
+    private static void insertionSort(int[] indexes, long[] keys, int count) {
+        for (int i = 1; i < count; i++) {
+            int index = indexes[i];
+            long key = keys[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j] > key) {
+                indexes[j + 1] = indexes[j];
+                keys[j + 1] = keys[j];
+                j--;
+            }
+            indexes[j + 1] = index;
+            keys[j + 1] = key;
+        }
+    }
+}
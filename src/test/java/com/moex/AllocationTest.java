@@ -0,0 +1,158 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class AllocationTest {
+
+    @Test
+    public void testExecutionReport() throws IOException {
+        DiscreteAuction auction = new DiscreteAuction(DiscreteAuction.Engine.SWEEP);
+        auction.readData(ClassLoader.getSystemResourceAsStream("dataset_02.txt"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ExecutionReportWriter report = new ExecutionReportWriter(Channels.newChannel(out))) {
+            auction.allocate(report);
+            Assert.assertEquals(3, report.getFillCount());
+        }
+        Assert.assertEquals("0 B 100 15.30\n1 B 50 15.30\n2 S 150 15.30\n", new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testPriceTimePriority() throws IOException {
+        BidColumns bids = new BidColumns();
+        new BidParser().parse(ClassLoader.getSystemResourceAsStream("dataset_1M.txt"), bids);
+
+        for (DiscreteAuction.Engine engine : new DiscreteAuction.Engine[] {DiscreteAuction.Engine.TREE, DiscreteAuction.Engine.SWEEP}) {
+            DiscreteAuction auction = new DiscreteAuction(engine);
+            auction.readData(ClassLoader.getSystemResourceAsStream("dataset_1M.txt"));
+            DealResult deal = auction.makeDeal();
+
+            long[] volumes = new long[2];
+            // последнее исполнение каждой стороны: заявки с лучшим приоритетом исполняются полностью
+            int[] lastBids = {-1, -1};
+            boolean[] partial = new boolean[2];
+            auction.allocate((bid, type, amount, price) -> {
+                int side = type.ordinal();
+                Assert.assertEquals(bids.getType(bid), type);
+                Assert.assertEquals(deal.getBestPrice(), price);
+                Assert.assertFalse("partial fill is not the last one", partial[side]);
+                Assert.assertTrue(amount > 0 && amount <= bids.getAmount(bid));
+                if (type == Bid.BidType.B) {
+                    Assert.assertTrue(bids.getPrice(bid) >= price);
+                }
+                else {
+                    Assert.assertTrue(bids.getPrice(bid) <= price);
+                }
+                if (lastBids[side] >= 0) {
+                    long previousPrice = bids.getPrice(lastBids[side]);
+                    Assert.assertTrue(type == Bid.BidType.B ?
+                        previousPrice >= bids.getPrice(bid) : previousPrice <= bids.getPrice(bid));
+                    Assert.assertTrue(previousPrice != bids.getPrice(bid) || lastBids[side] < bid);
+                }
+                lastBids[side] = bid;
+                partial[side] = amount < bids.getAmount(bid);
+                volumes[side] += amount;
+            });
+            Assert.assertEquals(deal.getBestAmount(), volumes[Bid.BidType.B.ordinal()]);
+            Assert.assertEquals(deal.getBestAmount(), volumes[Bid.BidType.S.ordinal()]);
+        }
+    }
+
+    private static String report(String data, DiscreteAuction.Allocation allocation) throws IOException {
+        DiscreteAuction auction = new DiscreteAuction(DiscreteAuction.Engine.SWEEP);
+        auction.readData(new ByteArrayInputStream(data.getBytes(StandardCharsets.US_ASCII)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ExecutionReportWriter report = new ExecutionReportWriter(Channels.newChannel(out))) {
+            auction.allocate(report, allocation);
+        }
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testProRata() throws IOException {
+        String data = "B 500 10.01\nB 100 10.00\nB 200 10.00\nB 300 10.00\nS 600 10.00\n";
+        Assert.assertEquals("0 B 500 10.00\n1 B 17 10.00\n2 B 33 10.00\n3 B 50 10.00\n4 S 600 10.00\n",
+            report(data, DiscreteAuction.Allocation.PRO_RATA));
+        Assert.assertEquals("0 B 500 10.00\n1 B 100 10.00\n4 S 600 10.00\n",
+            report(data, DiscreteAuction.Allocation.PRICE_TIME));
+
+        // при равных остатках недостающие после округления бумаги достаются более ранним заявкам
+        Assert.assertEquals("0 B 1 10.00\n1 B 1 10.00\n3 S 2 10.00\n",
+            report("B 1 10.00\nB 1 10.00\nB 1 10.00\nS 2 10.00\n", DiscreteAuction.Allocation.PRO_RATA));
+    }
+
+    @Test
+    public void testProRataLargeLevel() throws IOException {
+        // 300 тысяч заявок на одном граничном уровне
+        Random random = new Random(11);
+        BidColumns bids = new BidColumns();
+        StringBuilder data = new StringBuilder();
+        long buyVolume = 0;
+        for (int i = 0; i < 300_000; i++) {
+            int amount = 1 + random.nextInt(1000);
+            data.append("B ").append(amount).append(" 50.00\n");
+            bids.add(Bid.BidType.B, amount, 5_000);
+            buyVolume += amount;
+        }
+        long levelVolume = buyVolume;
+        for (long volume = 0; volume < levelVolume / 3; volume += 1000) {
+            data.append("S 1000 49.00\n");
+        }
+
+        DiscreteAuction auction = new DiscreteAuction(DiscreteAuction.Engine.SWEEP);
+        auction.readData(new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.US_ASCII)));
+        DealResult deal = auction.makeDeal();
+        long[] allocated = new long[1];
+        auction.allocate((bid, type, amount, price) -> {
+            if (type == Bid.BidType.B) {
+                // каждая доля отличается от точной пропорциональной не больше чем на одну бумагу
+                double exact = (double) deal.getBestAmount() * bids.getAmount(bid) / levelVolume;
+                Assert.assertTrue(Math.abs(amount - exact) < 1);
+                allocated[0] += amount;
+            }
+        }, DiscreteAuction.Allocation.PRO_RATA);
+        Assert.assertEquals(deal.getBestAmount(), allocated[0]);
+    }
+
+    @Test
+    public void testProRataLargeAmounts() {
+        // произведение объема сделки на количество в заявке превышает Long.MAX_VALUE
+        InstrumentSpec spec = InstrumentSpec.valueOf("1:1:10:1:2000000000");
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            data.append("B 2000000000 10\n");
+        }
+        data.append("B 3 10\n");
+        for (int i = 0; i < 4; i++) {
+            data.append("S 1750000000 5\n");
+        }
+        DiscreteAuction auction = new DiscreteAuction(DiscreteAuction.Engine.SWEEP, spec);
+        auction.readData(new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.US_ASCII)));
+        DealResult deal = auction.makeDeal();
+        Assert.assertEquals(7_000_000_000L, deal.getBestAmount());
+
+        long[] fills = new long[6];
+        auction.allocate((bid, type, amount, price) -> {
+            if (type == Bid.BidType.B) {
+                fills[bid] = amount;
+            }
+        }, DiscreteAuction.Allocation.PRO_RATA);
+        // 7e9 * 2e9 / (1e10 + 3) = 1399999999.58..., три недостающие бумаги достаются первым заявкам
+        Assert.assertArrayEquals(new long[] {1_400_000_000, 1_400_000_000, 1_400_000_000, 1_399_999_999,
+            1_399_999_999, 2}, fills);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testHistogramKeepsNoBids() {
+        DiscreteAuction auction = new DiscreteAuction(DiscreteAuction.Engine.HISTOGRAM);
+        auction.readData(ClassLoader.getSystemResourceAsStream("dataset_02.txt"));
+        auction.allocate((bid, type, amount, price) -> { });
+    }
+}
@@ -3,12 +3,43 @@ package com.moex;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Supplier;
+
 public class AppTest {
 
     private String runTest(String fileName) {
-        DiscreteAuction auction = new DiscreteAuction();
-        auction.readData(ClassLoader.getSystemResourceAsStream(fileName));
-        return auction.makeDeal().toString();
+        return runTest(() -> ClassLoader.getSystemResourceAsStream(fileName));
+    }
+
+    private String runTest(Supplier<InputStream> dataSource) {
+        String result = null;
+        for (DiscreteAuction.Engine engine : DiscreteAuction.Engine.values()) {
+            DiscreteAuction auction = new DiscreteAuction(engine);
+            auction.readData(dataSource.get());
+            String engineResult = auction.makeDeal().toString();
+            if (result != null) {
+                Assert.assertEquals(engine.name(), result, engineResult);
+            }
+            result = engineResult;
+        }
+        return result;
     }
 
     @Test
@@ -31,4 +62,204 @@ public class AppTest {
         Assert.assertEquals("124973654 50.47", runTest("dataset_1M.txt"));
     }
 
+    @Test
+    public void testReadFile() throws Exception {
+        for (String fileName : new String[] {"dataset_01.txt", "dataset_02.txt", "dataset_03.txt", "dataset_1M.txt"}) {
+            Path path = Paths.get(ClassLoader.getSystemResource(fileName).toURI());
+            String expected = runTest(fileName);
+            for (DiscreteAuction.Engine engine : DiscreteAuction.Engine.values()) {
+                DiscreteAuction auction = new DiscreteAuction(engine);
+                auction.readData(path);
+                Assert.assertEquals(fileName + " " + engine.name(), expected, auction.makeDeal().toString());
+            }
+        }
+    }
+
+    @Test
+    public void testReadFileBeyondMillionLines() throws Exception {
+        // строки после первого миллиона учитываются при любом способе чтения
+        Path path = Files.createTempFile("dataset", ".txt");
+        try {
+            Files.copy(ClassLoader.getSystemResourceAsStream("dataset_1M.txt"), path, StandardCopyOption.REPLACE_EXISTING);
+            try (Writer out = Files.newBufferedWriter(path, StandardOpenOption.APPEND)) {
+                for (int i = 0; i < 500_000; i++) {
+                    out.write("\nB 1000 100.00");
+                }
+            }
+            for (DiscreteAuction.Engine engine : DiscreteAuction.Engine.values()) {
+                DiscreteAuction auction = new DiscreteAuction(engine);
+                auction.readData(path);
+                Assert.assertEquals(engine.name(), "250154048 100.00", auction.makeDeal().toString());
+            }
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Поток, в котором заданный фрагмент повторяется указанное количество раз
+     */
+    private static InputStream repeatedStream(String fragment, long times) {
+        byte[] bytes = fragment.getBytes(StandardCharsets.US_ASCII);
+        long length = bytes.length * times;
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() {
+                return position < length ? bytes[(int) (position++ % bytes.length)] : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (position >= length) {
+                    return -1;
+                }
+                int count = (int) Math.min(len, length - position);
+                for (int i = 0; i < count; i++) {
+                    b[off + i] = bytes[(int) (position++ % bytes.length)];
+                }
+                return count;
+            }
+        };
+    }
+
+    @Test
+    public void testVolumeBeyondIntRange() {
+        // объем каждой стороны - 2,2 млрд бумаг, что больше Integer.MAX_VALUE
+        Assert.assertEquals("2200000000 50.00",
+            runTest(() -> repeatedStream("S 1000 49.99\nB 1000 50.01\n", 2_200_000)));
+    }
+
+    /**
+     * Поток строк, которые генерируются на лету в отдельном потоке выполнения
+     */
+    private static InputStream generatedStream(OrderFlowGenerator generator, long lines) throws IOException {
+        PipedInputStream in = new PipedInputStream(1024 * 1024);
+        PipedOutputStream out = new PipedOutputStream(in);
+        Thread producer = new Thread(() -> {
+            try (OutputStream stream = out) {
+                generator.generate(stream, lines);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        producer.setDaemon(true);
+        producer.start();
+        return in;
+    }
+
+    @Test
+    public void testStreamingHistogram() throws IOException {
+        OrderFlowGenerator generator = new OrderFlowGenerator(3)
+            .withAmountDistribution(OrderFlowGenerator.AmountDistribution.EXPONENTIAL);
+
+        // результат гистограммы совпадает с результатом независимого способа, хранящего заявки
+        long lines = 1_000_000;
+        DiscreteAuction sweep = new DiscreteAuction(DiscreteAuction.Engine.SWEEP);
+        sweep.readData(generatedStream(generator, lines));
+        DiscreteAuction histogram = new DiscreteAuction(DiscreteAuction.Engine.HISTOGRAM);
+        histogram.readData(generatedStream(generator, lines));
+        Assert.assertEquals(lines, histogram.getMetrics().getAcceptedLines());
+        Assert.assertEquals(sweep.makeDeal().toString(), histogram.makeDeal().toString());
+
+        // память O(L): при чтении 10 миллионов заявок (около 140 МБ текста, не меньше 130 МБ
+        // в виде столбцов) поток аукциона выделяет память только под книгу и буферы разбора
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        InputStream stream = generatedStream(generator, 10_000_000);
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        DiscreteAuction auction = new DiscreteAuction(DiscreteAuction.Engine.HISTOGRAM);
+        auction.readData(stream);
+        Assert.assertNotNull(auction.makeDeal());
+        allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+        Assert.assertEquals(10_000_000, auction.getMetrics().getAcceptedLines());
+        Assert.assertTrue("allocated " + allocated + " bytes", allocated < 4 * 1024 * 1024);
+    }
+
+    @Test
+    public void testBinaryFormat() throws Exception {
+        Path path = Files.createTempFile("dataset", ".bin");
+        try {
+            for (String fileName : new String[] {"dataset_01.txt", "dataset_02.txt", "dataset_03.txt", "dataset_1M.txt"}) {
+                try (OutputStream out = Files.newOutputStream(path)) {
+                    BinaryBidFormat.convert(ClassLoader.getSystemResourceAsStream(fileName), out);
+                }
+                String expected = runTest(fileName);
+                for (DiscreteAuction.Engine engine : DiscreteAuction.Engine.values()) {
+                    DiscreteAuction auction = new DiscreteAuction(engine);
+                    auction.readBinaryData(path);
+                    Assert.assertEquals(fileName + " " + engine.name(), expected, auction.makeDeal().toString());
+                }
+            }
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void testBinaryFormatHeader() throws Exception {
+        new DiscreteAuction().readBinaryData(Paths.get(ClassLoader.getSystemResource("dataset_03.txt").toURI()));
+    }
+
+    @Test
+    public void testMultiInstrument() {
+        String data =
+            "AAA B 100 15.40\n" +
+            "BBB B 254 21.25\nBBB B 381 34.03\n" +
+            "AAA B 100 15.30\n" +
+            "CCC B 100 10.00\nCCC S 150 10.10\n" +
+            "AAA S 150 15.30\nBBB S 300 21.25\n" +
+            "DDD\nEEE B 0 10.00\n B 100 15.40\n";
+        MultiInstrumentAuction auction = new MultiInstrumentAuction();
+        auction.readData(new ByteArrayInputStream(data.getBytes(StandardCharsets.US_ASCII)));
+        Assert.assertEquals("{AAA=150 15.30, BBB=300 21.25, CCC=0 n/a}", auction.makeDeals().toString());
+    }
+
+    @Test
+    public void testMultiInstrumentBookSizes() {
+        // у BIG заявок больше, чем ценовых уровней (книга уровней), у остальных - меньше (сортировка)
+        Random random = new Random(5);
+        String[] instruments = {"BIG", "MID", "ONE"};
+        int[] sizes = {2 * PriceLevelBook.LEVELS, 500, 2};
+        StringBuilder data = new StringBuilder();
+        StringBuilder[] books = new StringBuilder[instruments.length];
+        for (int i = 0; i < instruments.length; i++) {
+            books[i] = new StringBuilder();
+            for (int j = 0; j < sizes[i]; j++) {
+                String bid = String.format(Locale.US, "%s %d %.2f%n",
+                    j % 2 == 0 ? "B" : "S", 1 + random.nextInt(1_000), 10 + random.nextInt(1_000) / 100.0);
+                books[i].append(bid);
+                data.append(instruments[i]).append(' ').append(bid);
+            }
+        }
+        MultiInstrumentAuction auction = new MultiInstrumentAuction();
+        auction.readData(new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.US_ASCII)));
+        for (int i = 0; i < instruments.length; i++) {
+            byte[] bytes = books[i].toString().getBytes(StandardCharsets.US_ASCII);
+            Assert.assertEquals(instruments[i], runTest(() -> new ByteArrayInputStream(bytes)),
+                auction.makeDeals().get(instruments[i]).toString());
+        }
+        // задержка расчета записывается по каждой бумаге
+        Assert.assertEquals(instruments.length, auction.getDealLatency().snapshot().getCount());
+    }
+
+    @Test
+    public void testRandomBooks() {
+        // небольшие книги с узким диапазоном цен, чтобы было много совпадающих оптимальных цен
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            StringBuilder data = new StringBuilder();
+            int size = 1 + random.nextInt(30);
+            for (int j = 0; j < size; j++) {
+                data.append(String.format(Locale.US, "%s %d %.2f%n",
+                    random.nextBoolean() ? "B" : "S", 1 + random.nextInt(5), 10 + random.nextInt(20) / 100.0));
+            }
+            byte[] bytes = data.toString().getBytes(StandardCharsets.US_ASCII);
+            runTest(() -> new ByteArrayInputStream(bytes));
+        }
+    }
+
 }
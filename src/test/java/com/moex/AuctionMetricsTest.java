@@ -0,0 +1,66 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import javax.management.ObjectName;
+
+public class AuctionMetricsTest {
+
+    private static final String DATA = "B 100 15.40\nS 150 15.30\nbad line\nB 1 1.00\nS 5 99.00\n\nB 20 15.40\n";
+
+    @Test
+    public void testCounters() throws Exception {
+        for (DiscreteAuction.Engine engine : DiscreteAuction.Engine.values()) {
+            DiscreteAuction auction = new DiscreteAuction(engine);
+            auction.getMetrics().enableHeapSampling();
+            auction.readData(new ByteArrayInputStream(DATA.getBytes(StandardCharsets.US_ASCII)));
+            Assert.assertEquals("120 15.35", auction.makeDeal().toString());
+
+            AuctionMetrics metrics = auction.getMetrics();
+            Assert.assertEquals(engine.name(), 5, metrics.getAcceptedLines());
+            Assert.assertEquals(engine.name(), 2, metrics.getRejectedLines());
+            Assert.assertTrue(engine.name(), metrics.getParseNanos() > 0);
+            Assert.assertTrue(engine.name(), metrics.getPeakHeapBytes() > 0);
+            if (engine == DiscreteAuction.Engine.HISTOGRAM) {
+                // гистограмма не отсеивает заявки: учитываются все непустые уровни
+                Assert.assertEquals(4, metrics.getPriceLevels());
+            }
+            else {
+                Assert.assertEquals(engine.name(), 2, metrics.getPrunedBids());
+                Assert.assertEquals(engine.name(), 2, metrics.getPriceLevels());
+                Assert.assertEquals(engine.name(), engine == DiscreteAuction.Engine.TREE, metrics.getIndexNanos() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testHeapSamplingDisabledByDefault() {
+        DiscreteAuction auction = new DiscreteAuction(DiscreteAuction.Engine.SWEEP);
+        auction.readData(new ByteArrayInputStream(DATA.getBytes(StandardCharsets.US_ASCII)));
+        Assert.assertEquals("120 15.35", auction.makeDeal().toString());
+        Assert.assertEquals(0, auction.getMetrics().getPeakHeapBytes());
+        Assert.assertTrue(auction.getMetrics().getParseNanos() > 0);
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        DiscreteAuction auction = new DiscreteAuction(DiscreteAuction.Engine.SWEEP);
+        ObjectName name = auction.getMetrics().register();
+        try {
+            auction.readData(ClassLoader.getSystemResourceAsStream("dataset_1M.txt"));
+            auction.makeDeal();
+            Assert.assertEquals(auction.getMetrics().getAcceptedLines(),
+                ManagementFactory.getPlatformMBeanServer().getAttribute(name, "AcceptedLines"));
+            Assert.assertTrue(auction.getMetrics().getPeakHeapBytes() > 0);
+            Assert.assertTrue(((String) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Summary"))
+                .startsWith("engine=SWEEP parseNanos="));
+        }
+        finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class AuctionServerTest {
+
+    private static Thread start(AuctionServer server) {
+        Thread thread = new Thread(server);
+        thread.start();
+        return thread;
+    }
+
+    private static void stop(AuctionServer server, Thread thread) throws InterruptedException {
+        server.close();
+        thread.join();
+    }
+
+    private static DealResult request(SocketChannel channel, byte type) throws IOException {
+        ByteBuffer message = ByteBuffer.allocate(1).put(type);
+        message.flip();
+        while (message.hasRemaining()) {
+            channel.write(message);
+        }
+
+        ByteBuffer response = ByteBuffer.allocate(AuctionServer.DEAL_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (response.hasRemaining()) {
+            Assert.assertTrue(channel.read(response) >= 0);
+        }
+        response.flip();
+        Assert.assertEquals(AuctionServer.DEAL, response.get());
+        long amount = response.getLong();
+        long price = response.getLong();
+        return amount == 0 ? new DealResult() : new DealResult(price, 1, amount);
+    }
+
+    @Test
+    public void testAuctions() throws Exception {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        BinaryBidFormat.convert(ClassLoader.getSystemResourceAsStream("dataset_1M.txt"), binary);
+        byte[] bytes = binary.toByteArray();
+        // сообщения с заявками совпадают с записями двоичного формата без заголовка
+        ByteBuffer orders = ByteBuffer.wrap(bytes, BinaryBidFormat.HEADER_SIZE, bytes.length - BinaryBidFormat.HEADER_SIZE);
+
+        AuctionServer server = new AuctionServer(0);
+        Thread thread = start(server);
+        try {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+            try (SocketChannel first = SocketChannel.open(address); SocketChannel second = SocketChannel.open(address)) {
+                // половина заявок поступает по одному соединению, половина - по другому
+                int middle = BinaryBidFormat.HEADER_SIZE + orders.remaining() / AuctionServer.ORDER_SIZE / 2 * AuctionServer.ORDER_SIZE;
+                ByteBuffer firstHalf = orders.duplicate();
+                firstHalf.limit(middle);
+                ByteBuffer secondHalf = orders.duplicate();
+                secondHalf.position(middle);
+                while (firstHalf.hasRemaining()) {
+                    first.write(firstHalf);
+                }
+                while (secondHalf.hasRemaining()) {
+                    second.write(secondHalf);
+                }
+                // все заявки второго соединения обработаны до ответа на его запрос
+                Assert.assertNotNull(request(second, AuctionServer.INDICATIVE));
+                Assert.assertEquals("124973654 50.47", request(first, AuctionServer.INDICATIVE).toString());
+                Assert.assertEquals("124973654 50.47", request(second, AuctionServer.UNCROSS).toString());
+                Assert.assertEquals("0 n/a", request(first, AuctionServer.INDICATIVE).toString());
+
+                ByteBuffer order = ByteBuffer.allocate(2 * AuctionServer.ORDER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                order.put((byte) 'B').putInt(100).putInt(1_530).put((byte) 'S').putInt(150).putInt(1_530).flip();
+                while (order.hasRemaining()) {
+                    first.write(order);
+                }
+                Assert.assertEquals("100 15.30", request(first, AuctionServer.UNCROSS).toString());
+            }
+        }
+        finally {
+            stop(server, thread);
+        }
+    }
+
+    @Test
+    public void testJournalRecovery() throws Exception {
+        Path journal = Files.createTempFile("journal", ".bin");
+        Files.delete(journal);
+        try {
+            ByteBuffer messages = ByteBuffer.allocate(3 * AuctionServer.ORDER_SIZE + AuctionServer.CANCEL_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            messages.put((byte) 'B').putInt(100).putInt(1_530)
+                .put((byte) 'B').putInt(70).putInt(1_600)
+                .put((byte) 'S').putInt(150).putInt(1_530)
+                .put(AuctionServer.CANCEL).putInt(1)
+                .flip();
+            AuctionServer server = new AuctionServer(0, journal);
+            Thread thread = start(server);
+            try (SocketChannel channel = SocketChannel.open(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+                while (messages.hasRemaining()) {
+                    channel.write(messages);
+                }
+                Assert.assertEquals("100 15.30", request(channel, AuctionServer.INDICATIVE).toString());
+            }
+            finally {
+                stop(server, thread);
+            }
+
+            // после перезапуска книга восстанавливается по журналу, включая снятие заявки
+            AuctionServer restarted = new AuctionServer(0, journal);
+            Thread restartedThread = start(restarted);
+            try (SocketChannel channel = SocketChannel.open(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), restarted.getPort()))) {
+                Assert.assertEquals("100 15.30", request(channel, AuctionServer.UNCROSS).toString());
+            }
+            finally {
+                stop(restarted, restartedThread);
+            }
+            Assert.assertEquals("0 n/a", OrderJournal.recoverBook(journal).currentIndicativeDeal().toString());
+        }
+        finally {
+            Files.deleteIfExists(journal);
+        }
+    }
+
+    @Test
+    public void testSnapshotRecovery() throws Exception {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        BinaryBidFormat.convert(ClassLoader.getSystemResourceAsStream("dataset_1M.txt"), binary);
+        byte[] bytes = binary.toByteArray();
+        ByteBuffer orders = ByteBuffer.wrap(bytes, BinaryBidFormat.HEADER_SIZE, bytes.length - BinaryBidFormat.HEADER_SIZE);
+
+        Path journal = Files.createTempFile("journal", ".bin");
+        Path snapshot = Files.createTempFile("snapshot", ".bin");
+        Files.delete(journal);
+        Files.delete(snapshot);
+        try {
+            AuctionServer server = new AuctionServer(0, journal, snapshot, 100_000);
+            Thread thread = start(server);
+            try (SocketChannel channel = SocketChannel.open(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+                while (orders.hasRemaining()) {
+                    channel.write(orders);
+                }
+                Assert.assertEquals("124973654 50.47", request(channel, AuctionServer.INDICATIVE).toString());
+            }
+            finally {
+                stop(server, thread);
+            }
+            Assert.assertTrue(BookSnapshot.read(snapshot).getSequence() > 0);
+
+            AuctionServer restarted = new AuctionServer(0, journal, snapshot, 100_000);
+            Thread restartedThread = start(restarted);
+            try (SocketChannel channel = SocketChannel.open(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), restarted.getPort()))) {
+                Assert.assertEquals("124973654 50.47", request(channel, AuctionServer.INDICATIVE).toString());
+            }
+            finally {
+                stop(restarted, restartedThread);
+            }
+        }
+        finally {
+            Files.deleteIfExists(journal);
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void testPipelinedRequests() throws Exception {
+        // ответы на все запросы не помещаются в буфер ответов сервера
+        int requests = 20_000;
+        AuctionServer server = new AuctionServer(0);
+        Thread thread = start(server);
+        try (SocketChannel channel = SocketChannel.open(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+            byte[] messages = new byte[requests];
+            Arrays.fill(messages, AuctionServer.INDICATIVE);
+            ByteBuffer output = ByteBuffer.wrap(messages);
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+
+            ByteBuffer responses = ByteBuffer.allocate(requests * AuctionServer.DEAL_SIZE);
+            while (responses.hasRemaining()) {
+                Assert.assertTrue(channel.read(responses) >= 0);
+            }
+            for (int i = 0; i < requests; i++) {
+                Assert.assertEquals(AuctionServer.DEAL, responses.get(i * AuctionServer.DEAL_SIZE));
+            }
+        }
+        finally {
+            stop(server, thread);
+        }
+    }
+
+    @Test
+    public void testProtocolError() throws Exception {
+        AuctionServer server = new AuctionServer(0);
+        Thread thread = start(server);
+        try (SocketChannel channel = SocketChannel.open(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+            channel.write(ByteBuffer.wrap(new byte[] {'Q'}));
+            Assert.assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+        }
+        finally {
+            stop(server, thread);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BidColumnsTest {
+
+    // несколько полных блоков и неполный последний
+    private static final int SIZE = 3 * (1 << 16) + 123;
+
+    private static Bid.BidType type(int index) {
+        return index % 3 == 0 ? Bid.BidType.S : Bid.BidType.B;
+    }
+
+    @Test
+    public void testChunkedGrowth() {
+        BidColumns bids = new BidColumns();
+        for (int i = 0; i < SIZE; i++) {
+            Assert.assertEquals(i, bids.add(type(i), 1 + i % 1_000, 100 + i));
+        }
+        Assert.assertEquals(SIZE, bids.size());
+        for (int i = 0; i < SIZE; i++) {
+            Assert.assertEquals(type(i), bids.getType(i));
+            Assert.assertEquals(1 + i % 1_000, bids.getAmount(i));
+            Assert.assertEquals(100 + i, bids.getPrice(i));
+        }
+    }
+
+    @Test
+    public void testShare() {
+        BidColumns bids = new BidColumns();
+        for (int i = 0; i < SIZE; i++) {
+            bids.add(type(i), 1, i);
+        }
+        BidColumns copy = bids.share();
+
+        // изменения в одном хранилище не видны в другом
+        bids.setAmount(0, 7);
+        copy.setPrice(SIZE - 1, -1);
+        bids.add(Bid.BidType.B, 5, 5);
+        copy.add(Bid.BidType.S, 6, 6);
+
+        Assert.assertEquals(7, bids.getAmount(0));
+        Assert.assertEquals(1, copy.getAmount(0));
+        Assert.assertEquals(SIZE - 1, bids.getPrice(SIZE - 1));
+        Assert.assertEquals(-1, copy.getPrice(SIZE - 1));
+        Assert.assertEquals(Bid.BidType.B, bids.getType(SIZE));
+        Assert.assertEquals(Bid.BidType.S, copy.getType(SIZE));
+        Assert.assertEquals(1 << 16, bids.getPrice(1 << 16));
+        Assert.assertEquals(1 << 16, copy.getPrice(1 << 16));
+    }
+}
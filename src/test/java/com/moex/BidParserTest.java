@@ -0,0 +1,72 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BidParserTest {
+
+    private static final String[] LINES = {
+        "B 254 21.25", "S 1 1.00", "B 1000 100.00", "S 1001 10.00", "B 0 10.00", "B 10 0.99", "B 10 100.01",
+        "B +10 +10.5", "B 0010 010.10", "S 10 10.", "S 10 .5", "B 10 .", "B 10 +", "B + 10.00", "B -1 10.00",
+        "B 10 -10.00", "B 10 1e1", "B 10 1E+1", "B 10 0.1e3", "B 10 10.009", "B 10 10.0.0", " B 10 10.00",
+        "B 10 10.00 ", "B\t10\t10.00", "B\u000B10\f10.00", "B 10 10.00 X", "B 10", "B", "b 10 10.00",
+        "BS 10 10.00", "X 10 10.00", "", "   ", "B 10 ١٠.00", "B ١٠ 10.00", "B 10 10.00 ",
+        "B 10 184467440737095521.16", "B 10 00000000000000000000000000010.00", "B 99999999999 10.00",
+        "B\u001C10 10.00"
+    };
+
+    private static List<String> parse(byte[] data) throws IOException {
+        List<String> result = new ArrayList<>();
+        new BidParser().parse(
+            new ByteArrayInputStream(data),
+            (type, amount, price) -> result.add(type + " " + amount + " " + price)
+        );
+        return result;
+    }
+
+    @Test
+    public void testSameLinesAsParseBidFunction() throws IOException {
+        ParseBidFunction function = new ParseBidFunction();
+        for (String line : LINES) {
+            // строка сравнивается в том виде, в котором ее увидит InputStreamReader
+            byte[] data = line.getBytes(Charset.defaultCharset());
+            Bid bid = function.apply(new String(data, Charset.defaultCharset()));
+            List<String> expected = new ArrayList<>();
+            if (bid != null) {
+                expected.add(bid.getType() + " " + bid.getAmount() + " " + bid.getPrice());
+            }
+            Assert.assertEquals("line [" + line + "]", expected, parse(data));
+        }
+    }
+
+    @Test
+    public void testLineSeparators() throws IOException {
+        BidParser parser = new BidParser();
+        List<Long> prices = new ArrayList<>();
+        long lines = parser.parse(
+            new ByteArrayInputStream("B 1 1.00\r\nS 1 2.00\rB 1 3.00\n\nB 1 4.00".getBytes(Charset.defaultCharset())),
+            (type, amount, price) -> prices.add(price)
+        );
+        Assert.assertEquals(5, lines);
+        Assert.assertEquals(4, parser.getAcceptedCount());
+        Assert.assertEquals(1, parser.getRejectedCount());
+        Assert.assertEquals("[100, 200, 300, 400]", prices.toString());
+    }
+
+    @Test
+    public void testMaxLines() throws IOException {
+        List<Long> prices = new ArrayList<>();
+        new BidParser(2).parse(
+            new ByteArrayInputStream("B 1 1.00\n\nB 1 3.00\n".getBytes(Charset.defaultCharset())),
+            (type, amount, price) -> prices.add(price)
+        );
+        Assert.assertEquals("[100]", prices.toString());
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class BookSnapshotTest {
+
+    @Test
+    public void testRecoveryFromSnapshot() throws IOException {
+        Path journalFile = Files.createTempFile("journal", ".bin");
+        Path snapshotFile = Files.createTempFile("snapshot", ".bin");
+        Files.delete(journalFile);
+        try {
+            OrderBook book = new OrderBook();
+            Random random = new Random(7);
+            BookSnapshot[] snapshot = new BookSnapshot[1];
+            String[] snapshotDeal = new String[1];
+            try (OrderJournal journal = new OrderJournal(journalFile)) {
+                new BidParser().parse(ClassLoader.getSystemResourceAsStream("dataset_1M.txt"), (type, amount, price) -> {
+                    try {
+                        int id = book.addBid(type, amount, price);
+                        journal.appendBid(type, amount, price);
+                        // после снимка изменяются и заявки, попавшие в снимок
+                        int target = random.nextInt(id + 1);
+                        if (random.nextInt(20) == 0 && book.cancelBid(target)) {
+                            journal.appendCancel(target);
+                        }
+                        if (id == 500_000) {
+                            snapshot[0] = book.snapshot(journal.getSequence());
+                            snapshotDeal[0] = book.currentIndicativeDeal().toString();
+                        }
+                    }
+                    catch (IOException ex) {
+                        throw new AssertionError(ex);
+                    }
+                });
+            }
+            // снимок записывается после изменения книги и не зависит от этих изменений
+            snapshot[0].write(snapshotFile);
+
+            BookSnapshot restored = BookSnapshot.read(snapshotFile);
+            Assert.assertEquals(snapshot[0].getSequence(), restored.getSequence());
+            Assert.assertEquals(500_001, restored.getOrderCount());
+            Assert.assertEquals(snapshotDeal[0], restored.toBook().currentIndicativeDeal().toString());
+            Assert.assertEquals(book.currentIndicativeDeal().toString(),
+                OrderJournal.recoverBook(journalFile, snapshotFile).currentIndicativeDeal().toString());
+        }
+        finally {
+            Files.deleteIfExists(journalFile);
+            Files.deleteIfExists(snapshotFile);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testSnapshotAheadOfJournal() throws IOException {
+        Path journalFile = Files.createTempFile("journal", ".bin");
+        Path snapshotFile = Files.createTempFile("snapshot", ".bin");
+        Files.delete(journalFile);
+        try {
+            OrderBook book = new OrderBook();
+            try (OrderJournal journal = new OrderJournal(journalFile)) {
+                book.addBid(Bid.BidType.B, 10, 1_000);
+                journal.appendBid(Bid.BidType.B, 10, 1_000);
+            }
+            book.snapshot(2).write(snapshotFile);
+            OrderJournal.recoverBook(journalFile, snapshotFile);
+        }
+        finally {
+            Files.deleteIfExists(journalFile);
+            Files.deleteIfExists(snapshotFile);
+        }
+    }
+
+    @Test
+    public void testCorruptSnapshot() throws IOException {
+        OrderBook book = new OrderBook();
+        book.addBid(Bid.BidType.B, 10, 1_530);
+        book.addBid(Bid.BidType.S, 5, 1_520);
+        book.cancelBid(1);
+        Path file = Files.createTempFile("snapshot", ".bin");
+        try {
+            book.snapshot(3).write(file);
+            byte[] valid = Files.readAllBytes(file);
+            Assert.assertEquals(2, BookSnapshot.read(file).getOrderCount());
+
+            // один непустой уровень: продажа снята
+            int orders = BookSnapshot.HEADER_SIZE + 3 * 8;
+            // количество заявок, тип заявки, количество в заявке и один бит цены
+            int[][] corruptions = {{20, -1}, {20, 3}, {orders, 2}, {orders + 2 + 3, 0x80}, {orders + 2 + 8 + 1, 0x01}};
+            for (int[] corruption : corruptions) {
+                byte[] bytes = valid.clone();
+                if (corruption[0] == 20) {
+                    ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(20, corruption[1]);
+                }
+                else {
+                    bytes[corruption[0]] ^= corruption[1];
+                }
+                Files.write(file, bytes);
+                try {
+                    BookSnapshot.read(file);
+                    Assert.fail("offset " + corruption[0]);
+                }
+                catch (IOException expected) {
+                    // поврежденный снимок отклоняется
+                }
+            }
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
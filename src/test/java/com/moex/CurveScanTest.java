@@ -0,0 +1,53 @@
+package com.moex;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CurveScanTest {
+
+    private static final int[] SIZES = {0, 1, CurveScan.BLOCK_SIZE - 1, CurveScan.BLOCK_SIZE, 5 * CurveScan.BLOCK_SIZE + 17};
+
+    @Test
+    public void testPrefixSums() {
+        Random random = new Random(42);
+        for (int size : SIZES) {
+            long[] values = new long[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = random.nextInt(1000);
+            }
+            long[] sequential = new long[size];
+            long[] parallel = new long[size];
+            CurveScan.prefixSums(values, sequential, size, false);
+            CurveScan.prefixSums(values, parallel, size, true);
+            assertArrayEquals("size " + size, sequential, parallel);
+
+            // суммы на месте исходных значений
+            CurveScan.prefixSums(values, values, size, true);
+            assertArrayEquals("size " + size, sequential, values);
+        }
+    }
+
+    @Test
+    public void testMatch() {
+        Random random = new Random(42);
+        for (int size : SIZES) {
+            // пересекающиеся диапазоны цен с равными объемами, чтобы оптимальных цен было несколько
+            PriceVolumes sellBids = new PriceVolumes(size);
+            PriceVolumes buyBids = new PriceVolumes(size);
+            for (int i = 0; i < size; i++) {
+                sellBids.add(2L * i, 1 + random.nextInt(3));
+                buyBids.add(2L * size - 1 - 3L * i, 1 + random.nextInt(3));
+            }
+            PriceVolumes cumulativeSellBids = sellBids.cumulative();
+            PriceVolumes cumulativeBuyBids = buyBids.cumulative();
+
+            DealResult sequential = CurveScan.match(cumulativeSellBids, cumulativeBuyBids, false);
+            DealResult parallel = CurveScan.match(cumulativeSellBids, cumulativeBuyBids, true);
+            assertEquals("size " + size, sequential.toString(), parallel.toString());
+        }
+    }
+}
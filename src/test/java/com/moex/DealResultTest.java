@@ -0,0 +1,28 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class DealResultTest {
+
+    @Test
+    public void testRounding() {
+        // среднее округляется вверх до копейки
+        Assert.assertEquals("10 15.31", new DealResult(1530 + 1531 + 1531, 3, 10).toString());
+        Assert.assertEquals("10 15.30", new DealResult(1530 * 4, 4, 10).toString());
+        Assert.assertEquals("7 0.05", new DealResult(9, 2, 7).toString());
+        Assert.assertEquals("0 n/a", new DealResult().toString());
+        Assert.assertEquals("0 n/a", new DealResult(1530, 1, 0).toString());
+    }
+
+    @Test
+    public void testWriteTo() {
+        byte[] buffer = new byte[2 + DealResult.MAX_LENGTH];
+        DealResult result = new DealResult(Long.MAX_VALUE, 1, Long.MAX_VALUE);
+        int end = result.writeTo(buffer, 2);
+        Assert.assertEquals(Long.MAX_VALUE + " 92233720368547758.07",
+            new String(buffer, 2, end - 2, StandardCharsets.US_ASCII));
+    }
+}
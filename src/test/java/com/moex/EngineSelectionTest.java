@@ -0,0 +1,98 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class EngineSelectionTest {
+
+    @Test
+    public void testStatistics() {
+        InstrumentSpec spec = InstrumentSpec.valueOf("0.0001:0.0001:500000:1:1000000");
+        BidStatistics statistics = new BidStatistics(spec);
+        Assert.assertEquals(0, statistics.distinctLevels());
+        for (int i = 0; i < 200_000; i++) {
+            // 50 000 различных уровней, каждый встречается четыре раза
+            statistics.accept(Bid.BidType.B, 1, 10_000 + (i % 50_000) * 3L);
+        }
+        Assert.assertEquals(200_000, statistics.getCount());
+        Assert.assertEquals(50_000, statistics.distinctLevels(), 2_500);
+        Assert.assertEquals("bids=200000 levels~" + statistics.distinctLevels() + " prices=1.0000..15.9997",
+            statistics.toString());
+
+        Assert.assertEquals(DiscreteAuction.Engine.SWEEP, DiscreteAuction.selectEngine(1_000, 10));
+        Assert.assertEquals(DiscreteAuction.Engine.SWEEP, DiscreteAuction.selectEngine(2_000_000, 1_000_000));
+        Assert.assertEquals(DiscreteAuction.Engine.HISTOGRAM, DiscreteAuction.selectEngine(2_000_000, 9_901));
+    }
+
+    @Test
+    public void testSmallBook() {
+        byte[] data = "B 100 15.40\nS 150 15.30\nB 1 1.00\nS 5 99.00\nB 20 15.40\n".getBytes(StandardCharsets.US_ASCII);
+        DiscreteAuction auction = new DiscreteAuction(DiscreteAuction.Engine.AUTO);
+        auction.readData(new ByteArrayInputStream(data));
+        Assert.assertEquals("120 15.35", auction.makeDeal().toString());
+        Assert.assertEquals(DiscreteAuction.Engine.SWEEP, auction.getSelectedEngine());
+        Assert.assertEquals("SWEEP", auction.getMetrics().getSelectedEngine());
+        Assert.assertEquals("AUTO -> SWEEP (bids=5 levels~4 prices=1.00..99.00)", auction.getEngineChoice());
+
+        // заявки сохранены, поэтому объем можно распределить
+        long[] filled = new long[1];
+        auction.allocate((index, type, amount, price) -> filled[0] += amount);
+        Assert.assertEquals(240, filled[0]);
+    }
+
+    @Test
+    public void testLargeBook() throws IOException {
+        Random random = new Random(25);
+        StringBuilder text = new StringBuilder();
+        for (long i = 0; i < DiscreteAuction.Engine.AUTO_HISTOGRAM_MIN_BIDS + 1_000; i++) {
+            text.append(random.nextBoolean() ? "B " : "S ").append(1 + random.nextInt(1_000))
+                .append(" 15.").append(10 + random.nextInt(90)).append('\n');
+        }
+        byte[] data = text.toString().getBytes(StandardCharsets.US_ASCII);
+
+        // по умолчанию заявки сохраняются при любом объеме данных
+        DiscreteAuction sweep = new DiscreteAuction();
+        sweep.readData(new ByteArrayInputStream(data));
+        DealResult deal = sweep.makeDeal();
+        String expected = deal.toString();
+        Assert.assertEquals(DiscreteAuction.Engine.SWEEP, sweep.getSelectedEngine());
+        long[] filled = new long[1];
+        sweep.allocate((index, type, amount, price) -> filled[0] += amount);
+        Assert.assertEquals(2 * deal.getBestAmount(), filled[0]);
+
+        DiscreteAuction auction = new DiscreteAuction(DiscreteAuction.Engine.AUTO);
+        auction.readData(new ByteArrayInputStream(data));
+        Assert.assertEquals(expected, auction.makeDeal().toString());
+        Assert.assertEquals(DiscreteAuction.Engine.HISTOGRAM, auction.getSelectedEngine());
+        Assert.assertTrue(auction.getEngineChoice(), auction.getEngineChoice()
+            .startsWith("AUTO -> HISTOGRAM (bids=" + (DiscreteAuction.Engine.AUTO_HISTOGRAM_MIN_BIDS + 1_000) + " levels~90 "));
+        try {
+            auction.allocate((index, type, amount, price) -> { });
+            Assert.fail();
+        }
+        catch (IllegalStateException expectedException) {
+            // заявки не сохранены, способ для распределения нужно задать явно
+            Assert.assertTrue(expectedException.getMessage(), expectedException.getMessage().contains("AUTO -> HISTOGRAM"));
+        }
+
+        Path file = Files.createTempFile("bids", ".txt");
+        try {
+            Files.write(file, data);
+            DiscreteAuction fileAuction = new DiscreteAuction(DiscreteAuction.Engine.AUTO);
+            fileAuction.readData(file);
+            Assert.assertEquals(expected, fileAuction.makeDeal().toString());
+            Assert.assertEquals(DiscreteAuction.Engine.HISTOGRAM, fileAuction.getSelectedEngine());
+            Assert.assertTrue(fileAuction.getEngineChoice(), fileAuction.getEngineChoice().contains("from sample"));
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class FlightRecorderEventsTest {
+
+    @Test
+    public void testAuctionEvents() throws Exception {
+        Path file = Files.createTempFile("auction", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.enable("com.moex.IngestChunk");
+                recording.enable("com.moex.ParseReject");
+                recording.enable("com.moex.AuctionPhase");
+                recording.enable("com.moex.MakeDeal");
+                recording.enable("com.moex.BookUpdate");
+                recording.start();
+
+                DiscreteAuction auction = new DiscreteAuction(DiscreteAuction.Engine.TREE);
+                auction.readData(new ByteArrayInputStream(
+                    "B 100 15.40\nbad line\nS 150 15.30\n".getBytes(StandardCharsets.US_ASCII)));
+                auction.makeDeal();
+                auction.makeDeal();
+
+                OrderBook book = new OrderBook();
+                int id = book.addBid(Bid.BidType.B, 100, 1_530);
+                book.cancelBid(id);
+
+                recording.stop();
+                recording.dump(file);
+            }
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            Set<String> phases = new HashSet<>();
+            int deals = 0;
+            int cachedDeals = 0;
+            int updates = 0;
+            String rejectedLine = null;
+            long ingestedBids = 0;
+            for (RecordedEvent event : events) {
+                switch (event.getEventType().getName()) {
+                    case "com.moex.AuctionPhase":
+                        Assert.assertEquals("TREE", event.getString("engine"));
+                        phases.add(event.getString("phase"));
+                        break;
+                    case "com.moex.MakeDeal":
+                        deals++;
+                        if (event.getBoolean("cached")) {
+                            cachedDeals++;
+                            Assert.assertEquals(100, event.getLong("amount"));
+                            Assert.assertEquals(1_535, event.getLong("price"));
+                        }
+                        break;
+                    case "com.moex.BookUpdate":
+                        updates++;
+                        break;
+                    case "com.moex.ParseReject":
+                        rejectedLine = event.getString("line");
+                        break;
+                    case "com.moex.IngestChunk":
+                        ingestedBids += event.getLong("bids");
+                        break;
+                    default:
+                        break;
+                }
+            }
+            Assert.assertTrue(phases.containsAll(Arrays.asList("parse", "sort", "clean", "transform", "index")));
+            Assert.assertEquals(2, deals);
+            Assert.assertEquals(1, cachedDeals);
+            Assert.assertEquals(2, updates);
+            Assert.assertEquals("bad line", rejectedLine);
+            Assert.assertEquals(2, ingestedBids);
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
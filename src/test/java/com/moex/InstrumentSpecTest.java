@@ -0,0 +1,160 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class InstrumentSpecTest {
+
+    // 5 миллиардов уровней: книга хранит только непустые уровни
+    private static final InstrumentSpec FINE_TICK = InstrumentSpec.valueOf("0.0001:0.0001:500000:1:1000000");
+    // миллион уровней: книга хранит объемы по всем уровням
+    private static final InstrumentSpec DENSE_FINE_TICK = InstrumentSpec.valueOf("0.0001:0.0001:100:1:1000000");
+
+    @Test
+    public void testLayout() {
+        Assert.assertTrue(InstrumentSpec.DEFAULT.isDense());
+        Assert.assertEquals(PriceLevelBook.LEVELS, InstrumentSpec.DEFAULT.getLevelCount());
+        Assert.assertEquals(2, InstrumentSpec.DEFAULT.getScale());
+        Assert.assertEquals(5_000_000_000L, FINE_TICK.getLevelCount());
+        Assert.assertFalse(FINE_TICK.isDense());
+        Assert.assertTrue(DENSE_FINE_TICK.isDense());
+        Assert.assertEquals("0.05:1.00:100.00:1:1000", InstrumentSpec.valueOf("0.05:1:100:1:1000").toString());
+        Assert.assertEquals(InstrumentSpec.DEFAULT, InstrumentSpec.valueOf("0.01:1:100:1:1000"));
+
+        // 5 * 10^15 уровней: больше 2^40
+        InstrumentSpec nanoTick = InstrumentSpec.valueOf("0.000000001:0.000000001:5000000:1:1000");
+        Assert.assertEquals(5_000_000_000_000_000L, nanoTick.getLevelCount());
+        for (DiscreteAuction.Engine engine : DiscreteAuction.Engine.values()) {
+            DiscreteAuction auction = new DiscreteAuction(engine, nanoTick);
+            auction.readData(new ByteArrayInputStream("B 10 4999999.999999999\nS 10 0.000000001\nB 5 1\n"
+                .getBytes(StandardCharsets.US_ASCII)));
+            Assert.assertEquals(engine.toString(), "10 0.500000001", auction.makeDeal().toString());
+        }
+
+        for (String invalid : new String[] {"0.05:1.01:100:1:1000", "0:1:100:1:1000", "0.01:100:1:1:1000",
+            "0.01:1:100:0:1000", "0.0000000001:1:100:1:1000", "0.01:1:100:1"}) {
+            try {
+                InstrumentSpec.valueOf(invalid);
+                Assert.fail(invalid);
+            }
+            catch (IllegalArgumentException expected) {
+                // параметры отклоняются
+            }
+        }
+    }
+
+    @Test
+    public void testSameLinesAsParseBidFunction() throws IOException {
+        String[] lines = {
+            "B 10 123456.7891", "S 5 0.0001", "B 10 500000", "B 10 500000.0001", "B 1000000 1.5", "B 1000001 1.5",
+            "B 10 1.00005", "B 10 0.00001", "S 10 .0001", "B 10 499999.99999", "B 10 1e2", "B 10 99999999999999.9999"
+        };
+        for (InstrumentSpec spec : new InstrumentSpec[] {FINE_TICK, InstrumentSpec.valueOf("0.05:1:100:1:1000")}) {
+            ParseBidFunction function = new ParseBidFunction(spec);
+            for (String line : lines) {
+                Bid bid = function.apply(line);
+                List<String> expected = new ArrayList<>();
+                if (bid != null) {
+                    expected.add(bid.getType() + " " + bid.getAmount() + " " + bid.getPrice());
+                }
+                List<String> actual = new ArrayList<>();
+                new BidParser(spec).parse(
+                    new ByteArrayInputStream(line.getBytes(Charset.defaultCharset())),
+                    (type, amount, price) -> actual.add(type + " " + amount + " " + price)
+                );
+                Assert.assertEquals(spec + " line [" + line + "]", expected, actual);
+            }
+        }
+        Assert.assertNotNull(new ParseBidFunction(FINE_TICK).apply("B 10 123456.7891"));
+        Assert.assertNull(new ParseBidFunction(InstrumentSpec.valueOf("0.05:1:100:1:1000")).apply("B 10 1.03"));
+    }
+
+    @Test
+    public void testEnginesAgree() {
+        Random random = new Random(11);
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            long price = 500_000 + random.nextInt(2_000) * 7;
+            data.append(random.nextBoolean() ? 'B' : 'S').append(' ')
+                .append(1 + random.nextInt(1_000)).append(' ')
+                .append(BigDecimal.valueOf(price, 4).toPlainString()).append('\n');
+        }
+        byte[] bytes = data.toString().getBytes(StandardCharsets.US_ASCII);
+
+        String expected = null;
+        for (InstrumentSpec spec : new InstrumentSpec[] {FINE_TICK, DENSE_FINE_TICK}) {
+            for (DiscreteAuction.Engine engine : DiscreteAuction.Engine.values()) {
+                DiscreteAuction auction = new DiscreteAuction(engine, spec);
+                auction.readData(new ByteArrayInputStream(bytes));
+                String deal = auction.makeDeal().toString();
+                if (expected == null) {
+                    expected = deal;
+                    Assert.assertTrue(expected, expected.matches("\\d+ 5\\d\\.\\d{4}"));
+                }
+                Assert.assertEquals(spec + " " + engine, expected, deal);
+            }
+        }
+    }
+
+    @Test
+    public void testMultiInstrument() {
+        String data = "FINE B 100 123456.7891\nFINE S 100 123456.7890\nFINE S 10 1.00\n"
+            + "AAA B 100 15.30\nAAA S 100 15.30\nAAA B 100 123456.7891\n";
+        MultiInstrumentAuction auction = new MultiInstrumentAuction(
+            ForkJoinPool.commonPool(), Collections.singletonMap("FINE", FINE_TICK));
+        auction.readData(new ByteArrayInputStream(data.getBytes(StandardCharsets.US_ASCII)));
+        Assert.assertEquals("{AAA=100 15.30, FINE=100 123456.7891}", auction.makeDeals().toString());
+
+        // параметры по умолчанию для всех бумаг без отдельно заданных параметров
+        MultiInstrumentAuction defaults = new MultiInstrumentAuction(
+            ForkJoinPool.commonPool(), FINE_TICK, Collections.emptyMap());
+        defaults.readData(new ByteArrayInputStream(data.getBytes(StandardCharsets.US_ASCII)));
+        Assert.assertEquals("{AAA=100 15.3000, FINE=100 123456.7891}", defaults.makeDeals().toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testKopeckOnlySource() {
+        new DiscreteAuction(DiscreteAuction.Engine.SWEEP, FINE_TICK).readJournal(Paths.get("journal.bin"));
+    }
+
+    @Test
+    public void testDealPriceScale() {
+        Assert.assertEquals("7 1234.5679", new DealResult(12_345_678 + 12_345_679, 2, 7, 4).toString());
+        Assert.assertEquals("7 0.0005", new DealResult(10, 2, 7, 4).toString());
+        Assert.assertEquals("7 13", new DealResult(25, 2, 7, 0).toString());
+        Assert.assertEquals("7 0.05", new DealResult(10, 2, 7, 4).withScale(2).toString());
+    }
+
+    @Test
+    public void testLargePrices() {
+        // сумма двух оптимальных цен превышает Long.MAX_VALUE
+        InstrumentSpec spec = InstrumentSpec.valueOf("0.000000001:5000000000:5000001000:1:1000");
+        Assert.assertEquals(1_000_000_000_001L, spec.getLevelCount());
+        String bids = "B 10 5000000999.999999999\nS 10 5000000000.000000002\nS 5 5000000999.999999999\n";
+        byte[] data = bids.getBytes(StandardCharsets.US_ASCII);
+        for (DiscreteAuction.Engine engine : DiscreteAuction.Engine.values()) {
+            DiscreteAuction auction = new DiscreteAuction(engine, spec);
+            auction.readData(new ByteArrayInputStream(data));
+            Assert.assertEquals(engine.toString(), "10 5000000750.000000000", auction.makeDeal().toString());
+        }
+
+        MultiInstrumentAuction multi = new MultiInstrumentAuction(ForkJoinPool.commonPool(), spec, Collections.emptyMap());
+        multi.readData(new ByteArrayInputStream(bids.replaceAll("(?m)^(?=.)", "X ").getBytes(StandardCharsets.US_ASCII)));
+        Assert.assertEquals("{X=10 5000000750.000000000}", multi.makeDeals().toString());
+
+        // 128-битная сумма в результате
+        Assert.assertEquals("1 9223372036854775807", new DealResult(0, -2, 2, 1, 0).toString());
+    }
+}
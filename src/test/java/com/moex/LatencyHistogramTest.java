@@ -0,0 +1,86 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        Random random = new Random(3);
+        for (int i = 0; i < 1_000_000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(Long.SIZE - 1);
+            int bucket = LatencyHistogram.bucket(value);
+            long highest = LatencyHistogram.highestValue(bucket);
+            Assert.assertTrue(bucket < LatencyHistogram.BUCKETS);
+            Assert.assertTrue(value <= highest);
+            Assert.assertTrue(highest - value <= value / LatencyHistogram.SUB_BUCKETS);
+            Assert.assertEquals(bucket, LatencyHistogram.bucket(highest));
+        }
+        Assert.assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.bucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(100_000, snapshot.getCount());
+        Assert.assertEquals(50_000.5, snapshot.getMean(), 0.001);
+        assertClose(50_000, snapshot.getValueAtPercentile(50));
+        assertClose(99_000, snapshot.getValueAtPercentile(99));
+        assertClose(99_990, snapshot.getValueAtPercentile(99.99));
+        assertClose(100_000, snapshot.getMax());
+
+        LatencyHistogram.Snapshot decoded = LatencyHistogram.Snapshot.decode(snapshot.encode());
+        Assert.assertEquals(snapshot.toString(), decoded.toString());
+        // не больше нескольких байт на непустой интервал
+        Assert.assertTrue(snapshot.encode().length < 4_000);
+    }
+
+    private static void assertClose(long expected, long actual) {
+        Assert.assertTrue(expected + " vs " + actual, actual >= expected && actual - expected <= expected / 100);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 4;
+        int values = 1_000_000;
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long base = (t + 1) * 1_000L;
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < values; i++) {
+                    histogram.record(base);
+                }
+            });
+            producers[t].start();
+        }
+
+        // снимки во время записи не блокируют производителей и не уменьшаются
+        long intervalCount = 0;
+        long previousCount = 0;
+        for (int i = 0; i < 10; i++) {
+            long count = histogram.snapshot().getCount();
+            Assert.assertTrue(count >= previousCount);
+            previousCount = count;
+            intervalCount += histogram.intervalSnapshot().getCount();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        intervalCount += histogram.intervalSnapshot().getCount();
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals((long) threads * values, snapshot.getCount());
+        Assert.assertEquals((long) threads * values, intervalCount);
+        Assert.assertEquals(0, histogram.intervalSnapshot().getCount());
+        assertClose(4_000, snapshot.getMax());
+        assertClose(2_000, snapshot.getValueAtPercentile(50));
+    }
+}
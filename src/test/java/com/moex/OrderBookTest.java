@@ -0,0 +1,80 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class OrderBookTest {
+
+    private static String expectedDeal(OrderBook book, List<Integer> active, BidColumns bids) {
+        PriceLevelBook levels = new PriceLevelBook();
+        for (int id : active) {
+            levels.accept(bids.getType(id), bids.getAmount(id), bids.getPrice(id));
+        }
+        return levels.match().toString();
+    }
+
+    @Test
+    public void testLargeDataset() throws IOException {
+        OrderBook book = new OrderBook();
+        new BidParser().parse(ClassLoader.getSystemResourceAsStream("dataset_1M.txt"), book::addBid);
+        Assert.assertEquals("124973654 50.47", book.currentIndicativeDeal().toString());
+    }
+
+    @Test
+    public void testRandomUpdates() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            OrderBook book = new OrderBook();
+            // копия заявок для сверки с пересчетом книги с нуля
+            BidColumns bids = new BidColumns();
+            List<Integer> active = new ArrayList<>();
+            for (int step = 0; step < 300; step++) {
+                int action = random.nextInt(10);
+                if (action < 6 || active.isEmpty()) {
+                    Bid.BidType type = random.nextBoolean() ? Bid.BidType.B : Bid.BidType.S;
+                    int amount = 1 + random.nextInt(10);
+                    long price = 1_000 + random.nextInt(40);
+                    int id = book.addBid(type, amount, price);
+                    Assert.assertEquals(id, bids.add(type, amount, price));
+                    active.add(id);
+                }
+                else if (action < 8) {
+                    int id = active.remove(random.nextInt(active.size()));
+                    Assert.assertTrue(book.isActive(id));
+                    Assert.assertTrue(book.cancelBid(id));
+                    Assert.assertFalse(book.isActive(id));
+                    Assert.assertFalse(book.cancelBid(id));
+                }
+                else {
+                    int id = active.get(random.nextInt(active.size()));
+                    int amount = 1 + random.nextInt(10);
+                    long price = 1_000 + random.nextInt(40);
+                    book.amendBid(id, amount, price);
+                    bids.setAmount(id, amount);
+                    bids.setPrice(id, price);
+                }
+                Assert.assertEquals(expectedDeal(book, active, bids), book.currentIndicativeDeal().toString());
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownBid() {
+        OrderBook book = new OrderBook();
+        book.addBid(Bid.BidType.B, 1, 1_000);
+        Assert.assertTrue(book.isActive(0));
+        Assert.assertFalse(book.isActive(-1));
+        Assert.assertFalse(book.isActive(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPriceOutOfRange() {
+        new OrderBook().addBid(Bid.BidType.B, 1, 10_001);
+    }
+
+}
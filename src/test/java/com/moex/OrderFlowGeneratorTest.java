@@ -0,0 +1,54 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+public class OrderFlowGeneratorTest {
+
+    private static byte[] generate(OrderFlowGenerator generator, long lines, long expectedValidLines) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(expectedValidLines, generator.generate(out, lines));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testMalformedLinesAreRejected() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long validLines = new OrderFlowGenerator(1).withMalformedShare(0.2).generate(out, 10_000);
+        Assert.assertTrue(validLines > 7_000 && validLines < 9_000);
+
+        BidParser parser = new BidParser();
+        Assert.assertEquals(10_000, parser.parse(new ByteArrayInputStream(out.toByteArray()), (type, amount, price) -> { }));
+        Assert.assertEquals(validLines, parser.getAcceptedCount());
+
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(new ByteArrayInputStream(out.toByteArray()), StandardCharsets.US_ASCII));
+        Assert.assertEquals(validLines, in.lines().map(new ParseBidFunction()).filter(Objects::nonNull).count());
+    }
+
+    @Test
+    public void testDistributions() throws IOException {
+        for (OrderFlowGenerator.PriceDistribution prices : OrderFlowGenerator.PriceDistribution.values()) {
+            for (OrderFlowGenerator.AmountDistribution amounts : OrderFlowGenerator.AmountDistribution.values()) {
+                OrderFlowGenerator generator = new OrderFlowGenerator(2)
+                    .withPriceDistribution(prices)
+                    .withPrices(9_000, 2_000)
+                    .withAmountDistribution(amounts)
+                    .withBuyShare(0.3);
+                byte[] data = generate(generator, 5_000, 5_000);
+                // одинаковые параметры и зерно дают одинаковый результат
+                Assert.assertArrayEquals(data, generate(generator, 5_000, 5_000));
+                Assert.assertEquals(5_000, new BidParser().parse(new ByteArrayInputStream(data), (type, amount, price) -> { }));
+            }
+        }
+    }
+
+}
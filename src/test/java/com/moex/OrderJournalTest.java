@@ -0,0 +1,120 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+public class OrderJournalTest {
+
+    @Test
+    public void testRecovery() throws IOException {
+        Path file = Files.createTempFile("journal", ".bin");
+        Files.delete(file);
+        try {
+            OrderBook expected = new OrderBook();
+            Random random = new Random(5);
+            // небольшие участки, чтобы запись переходила через их границы
+            try (OrderJournal journal = new OrderJournal(file, 1024 * OrderJournal.RECORD_SIZE)) {
+                journal.appendBid(Bid.BidType.B, 100, 1_000);
+                journal.appendUncross();
+                new BidParser().parse(ClassLoader.getSystemResourceAsStream("dataset_1M.txt"), (type, amount, price) -> {
+                    try {
+                        int id = expected.addBid(type, amount, price);
+                        journal.appendBid(type, amount, price);
+                        if (random.nextInt(10) == 0) {
+                            expected.cancelBid(id);
+                            journal.appendCancel(id);
+                        }
+                        else if (random.nextInt(10) == 0) {
+                            long amended = price < 10_000 ? price + 1 : price - 1;
+                            expected.amendBid(id, amount, amended);
+                            journal.appendAmend(id, amount, amended);
+                        }
+                    }
+                    catch (IOException ex) {
+                        throw new AssertionError(ex);
+                    }
+                });
+            }
+
+            String deal = expected.currentIndicativeDeal().toString();
+            Assert.assertEquals(deal, OrderJournal.recoverBook(file).currentIndicativeDeal().toString());
+            for (DiscreteAuction.Engine engine : DiscreteAuction.Engine.values()) {
+                DiscreteAuction auction = new DiscreteAuction(engine);
+                auction.readJournal(file);
+                Assert.assertEquals(engine.name(), deal, auction.makeDeal().toString());
+            }
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testTornRecord() throws IOException {
+        Path file = Files.createTempFile("journal", ".bin");
+        Files.delete(file);
+        try {
+            try (OrderJournal journal = new OrderJournal(file)) {
+                for (int i = 0; i < 10; i++) {
+                    journal.appendBid(Bid.BidType.S, 10, 1_000 + i);
+                }
+            }
+            // запись с номером 8 повреждена: воспроизводятся только первые 7 событий
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[] {1}), OrderJournal.HEADER_SIZE + 7 * OrderJournal.RECORD_SIZE + 16);
+            }
+            long[] count = new long[1];
+            Assert.assertEquals(7, OrderJournal.replay(file, new CountingHandler(count)));
+            Assert.assertEquals(7, count[0]);
+
+            // новые события дописываются после последнего корректного, а поврежденный хвост удаляется
+            try (OrderJournal journal = new OrderJournal(file)) {
+                Assert.assertEquals(7, journal.getSequence());
+                Assert.assertEquals(8, journal.appendBid(Bid.BidType.B, 10, 1_005));
+            }
+            Assert.assertEquals(8, OrderJournal.replay(file, new CountingHandler(count)));
+            Assert.assertEquals("10 10.04", OrderJournal.recoverBook(file).currentIndicativeDeal().toString());
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static final class CountingHandler implements OrderJournal.Handler {
+
+        private final long[] count;
+
+        private CountingHandler(long[] count) {
+            this.count = count;
+            count[0] = 0;
+        }
+
+        @Override
+        public void bid(long sequence, Bid.BidType type, int amount, long price) {
+            count[0]++;
+        }
+
+        @Override
+        public void cancel(long sequence, int id) {
+            count[0]++;
+        }
+
+        @Override
+        public void amend(long sequence, int id, int amount, long price) {
+            count[0]++;
+        }
+
+        @Override
+        public void uncross(long sequence) {
+            count[0]++;
+        }
+    }
+}
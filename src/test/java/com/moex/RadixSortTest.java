@@ -0,0 +1,48 @@
+package com.moex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+public class RadixSortTest {
+
+    @Test
+    public void testStableOrder() {
+        Random random = new Random(7);
+        // один проход подсчетом, несколько проходов по разрядам и сортировка вставками
+        long[] maxKeys = {0, 1, 9_900, 1L << 20, 5_000_000_000L, (1L << 40) - 1};
+        int[] sizes = {0, 1, 31, 32, 1_000, 100_000};
+        for (long maxKey : maxKeys) {
+            for (int size : sizes) {
+                int[] indexes = new int[size];
+                long[] keys = new long[size];
+                // немного различных ключей, чтобы было много равных
+                long step = Math.max(1, maxKey / 50);
+                for (int i = 0; i < size; i++) {
+                    indexes[i] = i;
+                    keys[i] = (random.nextLong() >>> 1) % (maxKey / step + 1) * step;
+                }
+                if (size > 0) {
+                    keys[random.nextInt(size)] = maxKey;
+                }
+
+                long[] original = keys.clone();
+                Integer[] expected = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    expected[i] = i;
+                }
+                // сортировка объектов устойчива
+                Arrays.sort(expected, Comparator.comparingLong(i -> original[i]));
+
+                RadixSort.sort(indexes, keys, size, maxKey);
+                for (int i = 0; i < size; i++) {
+                    Assert.assertEquals(maxKey + " " + size + " at " + i, (int) expected[i], indexes[i]);
+                    Assert.assertEquals(original[indexes[i]], keys[i]);
+                }
+            }
+        }
+    }
+}